@@ -0,0 +1,197 @@
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class hands events over to a background thread through a bounded ring buffer, so that the thread reporting
+ * an event never waits for the output. The background thread passes the events in batches to another sink, e.g. a
+ * TextEventRenderer, and flushes it whenever it caught up with the reporting thread.
+ * <p>
+ * Only one thread may report events at a time. If the other sink throws, the background thread stops and the
+ * reporting thread gets the failure on the next event it reports, or when it flushes or closes the sink.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see EventSink
+ * @see TextEventRenderer
+ */
+class AsyncEventSink implements EventSink {
+  private static final Event[] EVENTS = Event.values();
+  private static final int SPINS = 256;
+  private static final byte MESSAGE = -1;
+
+  private final EventSink delegate;
+  private final int mask;
+  private final byte[] events;
+  private final int[] transactionIds;
+  private final int[] variableIds;
+  private final String[] messages;
+  private final long[] values;
+  private final int[] siteIds;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private final Thread writer;
+  private volatile long flushed;
+  private volatile boolean closed;
+  private volatile Throwable failure;
+
+  /**
+   * Constructor for sink passing events to given sink on a background thread.
+   *
+   * @param delegate The sink receiving the events on the background thread
+   * @param capacity The minimum number of buffered events, rounded up to a power of two
+   * @throws NullPointerException     if delegate is null
+   * @throws IllegalArgumentException if capacity is not positive
+   */
+  AsyncEventSink(EventSink delegate, int capacity) {
+    this.delegate = Objects.requireNonNull(delegate, "delegate must not be null.");
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive.");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    mask = size - 1;
+    events = new byte[size];
+    transactionIds = new int[size];
+    variableIds = new int[size];
+    messages = new String[size];
+    values = new long[size];
+    siteIds = new int[size];
+    writer = new Thread(this::drain, "event-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  @Override
+  public void accept(Event event, int transactionId, int variableId, long value, int siteId) {
+    long t = tail.get();
+    int slot = claim(t);
+    events[slot] = (byte) event.ordinal();
+    transactionIds[slot] = transactionId;
+    variableIds[slot] = variableId;
+    values[slot] = value;
+    siteIds[slot] = siteId;
+    tail.lazySet(t + 1);
+  }
+
+  @Override
+  public void message(String text) {
+    long t = tail.get();
+    int slot = claim(t);
+    events[slot] = MESSAGE;
+    messages[slot] = text;
+    tail.lazySet(t + 1);
+  }
+
+  /**
+   * Waits until the background thread has written out every event reported so far.
+   *
+   * @throws IllegalStateException if the background thread stopped before it wrote them out
+   */
+  @Override
+  public void flush() {
+    long t = tail.get();
+    int idle = 0;
+    while (flushed < t) {
+      if (!writer.isAlive()) {
+        throw stopped();
+      }
+      idle = backOff(idle);
+    }
+  }
+
+  /**
+   * Writes out every event reported so far and stops the background thread.
+   *
+   * @throws IllegalStateException if the other sink failed on the background thread
+   */
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw stopped();
+    }
+  }
+
+  /**
+   * Waits until the slot of given position is free.
+   *
+   * @param t The position to write at
+   * @return The slot of position
+   * @throws IllegalStateException if the background thread stopped
+   */
+  private int claim(long t) {
+    if (failure != null) {
+      throw stopped();
+    }
+    int idle = 0;
+    while (t - head.get() > mask) {
+      if (!writer.isAlive()) {
+        throw stopped();
+      }
+      idle = backOff(idle);
+    }
+    return (int) t & mask;
+  }
+
+  private IllegalStateException stopped() {
+    Throwable cause = failure;
+    return cause == null ? new IllegalStateException("event writer is closed.")
+            : new IllegalStateException("event writer failed.", cause);
+  }
+
+  private void drain() {
+    try {
+      write();
+    } catch (RuntimeException | Error e) {
+      failure = e;
+    }
+  }
+
+  private void write() {
+    long h = head.get();
+    while (true) {
+      long t = tail.get();
+      if (h == t) {
+        if (flushed != h) {
+          delegate.flush();
+          flushed = h;
+        }
+        if (closed && h == tail.get()) {
+          delegate.close();
+          return;
+        }
+        LockSupport.parkNanos(this, 100_000L);
+        continue;
+      }
+      for (; h < t; h++) {
+        int slot = (int) h & mask;
+        if (events[slot] == MESSAGE) {
+          delegate.message(messages[slot]);
+          messages[slot] = null;
+        } else {
+          delegate.accept(EVENTS[events[slot]], transactionIds[slot], variableIds[slot], values[slot],
+                  siteIds[slot]);
+        }
+      }
+      head.lazySet(h);
+    }
+  }
+
+  private static int backOff(int idle) {
+    if (idle < SPINS) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(50_000L);
+    }
+    return idle + 1;
+  }
+}
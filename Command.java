@@ -0,0 +1,38 @@
+/**
+ * This class represents one decoded instruction of an input script. It only holds primitive fields so that a single
+ * instance can be reused for every instruction of the script. The value of a write is a value word, see
+ * {@link Value}.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see ScriptTokenizer
+ */
+class Command {
+  /**
+   * Enum instruction types of the input grammar
+   */
+  enum Type {
+    BEGIN, BEGIN_RO, END, FAIL, RECOVER, READ, WRITE, DUMP, DUMP_SITE, DUMP_VARIABLE, INVALID
+  }
+
+  Type type;
+  int transaction;
+  int variable;
+  int site;
+  long value;
+  int time;
+
+  /**
+   * Copies every field of given command into this command.
+   *
+   * @param command The command to copy from
+   */
+  void copyFrom(Command command) {
+    type = command.type;
+    transaction = command.transaction;
+    variable = command.variable;
+    site = command.site;
+    value = command.value;
+    time = command.time;
+  }
+}
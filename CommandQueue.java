@@ -0,0 +1,161 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * This class represents a bounded ring buffer of commands handed from the reader stage to the execution stage. It
+ * supports exactly one producer and one consumer thread and stores every command field in a primitive array, so
+ * that nothing is allocated per command.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Command
+ * @see Driver
+ */
+class CommandQueue {
+  private static final Command.Type[] TYPES = Command.Type.values();
+  private static final int SPINS = 256;
+
+  private final int mask;
+  private final byte[] types;
+  private final int[] transactions;
+  private final int[] variables;
+  private final int[] sites;
+  private final long[] values;
+  private final int[] times;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private volatile boolean closed;
+  private volatile boolean abandoned;
+  private volatile Exception failure;
+
+  /**
+   * Constructor for a queue holding at least given number of commands.
+   *
+   * @param capacity The minimum capacity, rounded up to a power of two
+   * @throws IllegalArgumentException if capacity is not positive
+   */
+  CommandQueue(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive.");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    mask = size - 1;
+    types = new byte[size];
+    transactions = new int[size];
+    variables = new int[size];
+    sites = new int[size];
+    values = new long[size];
+    times = new int[size];
+  }
+
+  /**
+   * Appends a copy of given command, waiting while the queue is full. Called by the producer only.
+   *
+   * @param command The command to append
+   * @return true if the command was appended, false if the consumer stopped taking commands
+   */
+  boolean put(Command command) {
+    long t = tail.get();
+    int idle = 0;
+    while (t - head.get() > mask) {
+      if (abandoned) {
+        return false;
+      }
+      idle = backOff(idle);
+    }
+    int slot = (int) t & mask;
+    types[slot] = (byte) command.type.ordinal();
+    transactions[slot] = command.transaction;
+    variables[slot] = command.variable;
+    sites[slot] = command.site;
+    values[slot] = command.value;
+    times[slot] = command.time;
+    tail.lazySet(t + 1);
+    return !abandoned;
+  }
+
+  /**
+   * Removes the oldest command into given command, waiting while the queue is empty. Called by the consumer only.
+   *
+   * @param command The command to fill
+   * @return true if a command was taken, false if the producer closed the queue and every command was taken
+   * @throws Exception the failure reported by the producer, once every command before it was taken
+   */
+  boolean take(Command command) throws Exception {
+    long h = head.get();
+    int idle = 0;
+    while (h == tail.get()) {
+      if (closed) {
+        if (h != tail.get()) {
+          break;
+        }
+        if (failure != null) {
+          throw failure;
+        }
+        return false;
+      }
+      idle = backOff(idle);
+    }
+    int slot = (int) h & mask;
+    command.type = TYPES[types[slot]];
+    command.transaction = transactions[slot];
+    command.variable = variables[slot];
+    command.site = sites[slot];
+    command.value = values[slot];
+    command.time = times[slot];
+    head.lazySet(h + 1);
+    return true;
+  }
+
+  /**
+   * Passes the value word of every queued command which is not an int to given action. Called by the consumer only.
+   *
+   * @param action The action taking each value word
+   */
+  void forEachValue(LongConsumer action) {
+    long t = tail.get();
+    for (long h = head.get(); h < t; h++) {
+      long value = values[(int) h & mask];
+      if (!Value.isInt(value)) {
+        action.accept(value);
+      }
+    }
+  }
+
+  /**
+   * Marks that the producer will not append any more commands.
+   */
+  void close() {
+    closed = true;
+  }
+
+  /**
+   * Marks that the producer stopped because of given failure.
+   *
+   * @param failure The failure of the producer
+   */
+  void fail(Exception failure) {
+    this.failure = failure;
+    closed = true;
+  }
+
+  /**
+   * Marks that the consumer will not take any more commands, so that a waiting producer stops.
+   */
+  void abandon() {
+    abandoned = true;
+  }
+
+  private static int backOff(int idle) {
+    if (idle < SPINS) {
+      Thread.yield();
+    } else {
+      LockSupport.parkNanos(50_000L);
+    }
+    return idle + 1;
+  }
+}
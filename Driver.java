@@ -1,5 +1,7 @@
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * <h1>Replicated Concurrency Control and Recovery(RepCRec)</h1>
@@ -13,20 +15,154 @@ import java.util.Objects;
  * @see TransactionManager
  */
 class Driver {
+  private static final int QUEUE_CAPACITY = 1 << 14;
+  private static final int EVENT_CAPACITY = 1 << 16;
+
   private final TransactionManager tm;
+  private final EventSink events;
+  private final SymbolTable transactionIds;
+  private final ValueTable values;
+  private final ScriptTokenizer lineTokenizer;
+  private final Command lineCommand = new Command();
   int time = 1;
 
-  private Driver() {
-    tm = new TransactionManager(this);
+  Driver(SymbolTable transactionIds, ValueTable values, EventSink events) {
+    this(transactionIds, values, new SiteManager.Config(), events);
+  }
+
+  Driver(SymbolTable transactionIds, ValueTable values, SiteManager.Config config, EventSink events) {
+    this.transactionIds = Objects.requireNonNull(transactionIds, "transactionIds must not be null.");
+    this.values = Objects.requireNonNull(values, "values must not be null.");
+    this.events = events;
+    lineTokenizer = new ScriptTokenizer(transactionIds, values);
+    tm = new TransactionManager(() -> time, config, events);
   }
 
   public static void main(String[] args) {
-    if (args.length < 1) {
-      System.out.println("Please provide input file.");
-      System.exit(1);
+    boolean pipelined = false;
+    boolean compile = false;
+    boolean replay = false;
+    String output = "-text";
+    SiteManager.Config config = new SiteManager.Config();
+    int first = 0;
+    for (; first < args.length && args[first].startsWith("-"); first++) {
+      switch (args[first]) {
+        case "-sites":
+        case "-variables":
+        case "-replication":
+        case "-selection":
+        case "-placement":
+        case "-virtualNodes":
+        case "-adaptEvery":
+        case "-hotReads":
+        case "-fanOut":
+        case "-store":
+        case "-protocol":
+        case "-updates":
+          if (first + 1 == args.length) {
+            usage();
+          }
+          try {
+            config.set(args[first].substring(1), args[++first]);
+          } catch (IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+            usage();
+          }
+          break;
+        case "-pipelined":
+          pipelined = true;
+          break;
+        case "-compile":
+          compile = true;
+          break;
+        case "-replay":
+          replay = true;
+          break;
+        case "-text":
+        case "-async":
+        case "-quiet":
+          output = args[first];
+          break;
+        default:
+          usage();
+      }
+    }
+    int files = args.length - first;
+    if (compile) {
+      if (files != 2 || pipelined || replay) {
+        usage();
+      }
+      compileToLog(args[first], args[first + 1]);
+      return;
+    }
+    if (files != 1 || (pipelined && replay)) {
+      usage();
+    }
+
+    SymbolTable transactionIds = new SymbolTable();
+    ValueTable values = new ValueTable();
+    EventSink events;
+    if (output.equals("-quiet")) {
+      events = EventSink.NONE;
+    } else if (output.equals("-async")) {
+      events = new AsyncEventSink(new TextEventRenderer(System.out, transactionIds, values),
+              EVENT_CAPACITY);
+    } else {
+      events = new TextEventRenderer(System.out, transactionIds, values);
+    }
+    Driver driver;
+    try {
+      driver = new Driver(transactionIds, values, config, events);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error: " + e.getMessage());
+      usage();
+      return;
+    }
+    try {
+      if (replay) {
+        driver.replayFromLog(args[first]);
+      } else if (pipelined) {
+        driver.readFromFilePipelined(args[first]);
+      } else {
+        driver.readFromFile(args[first]);
+      }
+    } finally {
+      events.close();
+    }
+  }
+
+  /**
+   * Prints how to run the driver and exits.
+   */
+  private static void usage() {
+    System.out.println("Please provide input file.");
+    System.out.println("Usage: java Driver [-pipelined] [-text|-async|-quiet] [options] <input file>");
+    System.out.println("       java Driver -replay [-text|-async|-quiet] [options] <log file>");
+    System.out.println("       java Driver -compile <input file> <log file>");
+    System.out.println("Options: -sites <n> (default 10), -variables <n> (default 20), "
+            + "-replication even|all|none (default even),");
+    System.out.println("         -selection first|round_robin|least_locks|locality (default first),");
+    System.out.println("         -placement modulo|hash|range (default modulo), -virtualNodes <n> (default 160),");
+    System.out.println("         -adaptEvery <transactions> (default 0, off), -hotReads <n> (default 16),");
+    System.out.println("         -fanOut serial|parallel|actor (default serial), -store heap|off_heap (default heap),");
+    System.out.println("         -protocol locking|snapshot|optimistic (default locking), "
+            + "-updates in_place|deferred (default in_place)");
+    System.exit(1);
+  }
+
+  /**
+   * Compiles input file into a binary operation log which can be replayed later.
+   *
+   * @param inputFile The name of the input file
+   * @param logFile   The name of the log file
+   */
+  private static void compileToLog(String inputFile, String logFile) {
+    try {
+      long count = OperationLog.compile(inputFile, logFile);
+      System.out.println(">>>> Compiled " + count + " commands from " + inputFile + " into " + logFile);
+    } catch (Exception e) {
+      System.out.println("Error: " + e.getMessage());
     }
-    Driver driver = new Driver();
-    driver.readFromFile(args[0]);
   }
 
   /**
@@ -35,93 +171,216 @@ class Driver {
    * @param inputFile, The name of the input file
    */
   private void readFromFile(String inputFile) {
-    FileReader fileReader;
-    BufferedReader br;
-    try {
-      fileReader = new FileReader(Objects.requireNonNull(inputFile, "inputFile must not be null."));
-      br = new BufferedReader(fileReader);
-      System.out.println(">>>> Input file name: " + inputFile);
-      String line = br.readLine();
-
-      while (line != null) {
-        if (line.startsWith("//") || line.isEmpty()) {
-          line = br.readLine();
-          continue;
-        } else if (line.startsWith("=")) {
-          break;
-        }
+    try (FileChannel channel = new FileInputStream(Objects.requireNonNull(inputFile,
+            "inputFile must not be null.")).getChannel()) {
+      events.message(">>>> Input file name: " + inputFile);
+      ScriptTokenizer tokenizer = new ScriptTokenizer(channel, transactionIds, values);
+      Command command = new Command();
+      while (tokenizer.next(command)) {
+        time = command.time;
+        execute(command);
+        collectValues(null);
+      }
+      events.message("");
+    } catch (Exception e) {
+      events.message("Error: " + e.getMessage());
+    }
+  }
 
-        String[] commands = line.split(";");
-        for (String command : commands) {
-          String temp = command.trim();
-          String instruction = temp.substring(0, temp.indexOf("("))
-                  .trim();
-          String transactionId = temp.substring(
-                  temp.indexOf("(") + 1, temp.indexOf(")")).trim();
-
-          String tid;
-          String vid;
-          int siteId;
-          int val;
-          switch (instruction.toLowerCase()) {
-            case "begin":
-              tm.beginTransaction(transactionId, time, false);
-              break;
-
-            case "beginro":
-              tm.beginTransaction(transactionId, time, true);
-              break;
-
-            case "end":
-              tm.endTransaction(transactionId, time);
-              break;
-
-            case "fail":
-              siteId = Integer.parseInt(transactionId);
-              tm.failSite(siteId, time);
-              break;
-
-            case "recover":
-              siteId = Integer.parseInt(transactionId);
-              tm.recoverSite(siteId);
-              break;
-
-            case "w":
-              tid = transactionId.split(",")[0].trim();
-              vid = transactionId.split(",")[1].trim();
-              val = Integer.parseInt(transactionId.split(",")[2].trim());
-              tm.writeRequest(tid, vid, val);
-              break;
-
-            case "r":
-              tid = transactionId.split(",")[0].trim();
-              vid = transactionId.split(",")[1].trim();
-              tm.readRequest(tid, vid);
-              break;
-
-            case "dump":
-              if (transactionId.equals("")) {
-                tm.dump();
-              } else if (transactionId.toLowerCase()
-                      .startsWith("x")) {
-                tm.dump(transactionId);
-              } else {
-                int siteID = Integer.parseInt(transactionId);
-                tm.dump(siteID);
-              }
-              break;
-
-            default:
-              System.out.println("Error: instruction might be invalid.");
+  /**
+   * Reads input file on a separate reader thread which decodes the commands into a bounded queue, while this thread
+   * takes the commands from the queue and executes them. Each command keeps the time it was decoded with.
+   *
+   * @param inputFile, The name of the input file
+   */
+  private void readFromFilePipelined(String inputFile) {
+    try (FileChannel channel = new FileInputStream(Objects.requireNonNull(inputFile,
+            "inputFile must not be null.")).getChannel()) {
+      events.message(">>>> Input file name: " + inputFile);
+      CommandQueue queue = new CommandQueue(QUEUE_CAPACITY);
+      Thread reader = new Thread(() -> {
+        ScriptTokenizer tokenizer = new ScriptTokenizer(channel, transactionIds, values);
+        Command decoded = new Command();
+        try {
+          while (tokenizer.next(decoded) && queue.put(decoded)) {
+            // the command was handed off to the execution stage
           }
+          queue.close();
+        } catch (Exception e) {
+          queue.fail(e);
         }
-        time++;
-        line = br.readLine();
+      }, "script-reader");
+      reader.setDaemon(true);
+      reader.start();
+
+      Command command = new Command();
+      try {
+        while (queue.take(command)) {
+          time = command.time;
+          execute(command);
+          collectValues(queue);
+        }
+      } finally {
+        queue.abandon();
+        reader.join();
       }
-      System.out.println();
-      br.close();
+      events.message("");
     } catch (Exception e) {
-      System.out.println("Error: " + e.getMessage());
+      events.message("Error: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Replays a binary operation log created from an input file, skipping all text parsing.
+   *
+   * @param logFile The name of the log file
+   */
+  private void replayFromLog(String logFile) {
+    try {
+      events.message(">>>> Input file name: " + logFile);
+      OperationLog.replay(logFile, transactionIds, values, command -> {
+        time = command.time;
+        execute(command);
+        collectValues(null);
+      });
+      events.message("");
+    } catch (Exception e) {
+      events.message("Error: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Executes every command of one line at the current time and moves on to the next time, as if the line was the
+   * next line of an input file.
+   *
+   * @param buffer The buffer holding the line
+   * @param from   The index of the first byte of the line
+   * @param to     The index after the last byte of the line, excluding the line separator
+   * @return true if the line held commands, false if it was empty, a comment or the terminator
+   * @throws IllegalArgumentException if a command of the line is malformed. The commands before it were executed.
+   */
+  boolean executeLine(byte[] buffer, int from, int to) {
+    return executeLine(buffer, from, to, null);
+  }
+
+  /**
+   * Executes every command of one line like {@link #executeLine(byte[], int, int)}, passing each command to given
+   * check before it is executed.
+   *
+   * @param buffer The buffer holding the line
+   * @param from   The index of the first byte of the line
+   * @param to     The index after the last byte of the line, excluding the line separator
+   * @param check  The check of each command, which rejects it by throwing IllegalArgumentException, or null
+   * @return true if the line held commands, false if it was empty, a comment or the terminator
+   * @throws IllegalArgumentException if a command of the line is malformed or rejected. The commands before it were
+   *                                  executed.
+   */
+  boolean executeLine(byte[] buffer, int from, int to, Consumer<Command> check) {
+    if (!lineTokenizer.line(buffer, from, to)) {
+      return false;
+    }
+    try {
+      while (lineTokenizer.next(lineCommand)) {
+        if (check != null) {
+          check.accept(lineCommand);
+        }
+        execute(lineCommand);
+      }
+      collectValues(null);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      time++;
+    }
+    return true;
+  }
+
+  /**
+   * Checks if the transaction with given handle has begun, whether or not it ended since.
+   *
+   * @param transactionId The handle of transaction
+   * @return true if the transaction has begun
+   */
+  boolean hasBegun(int transactionId) {
+    return tm.getTransactionStatus(transactionId) != null;
+  }
+
+  /**
+   * Aborts the transaction with given handle if it has not ended yet, releasing its locks.
+   *
+   * @param transactionId The handle of transaction
+   */
+  void abort(int transactionId) {
+    tm.abortRunning(transactionId);
+  }
+
+  /**
+   * Sweeps the table of values once a sweep is due, keeping the values still held by the transaction manager and by
+   * the commands queued for it. The events reported so far are flushed first, so that no event still holds a value.
+   *
+   * @param queue The queue of commands decoded but not executed yet, or null
+   */
+  private void collectValues(CommandQueue queue) {
+    if (!values.isSweepDue()) {
+      return;
+    }
+    events.flush();
+    tm.forEachValue(values::mark);
+    if (queue != null) {
+      queue.forEachValue(values::mark);
+    }
+    values.sweep();
+  }
+
+  /**
+   * Executes a decoded command on the transaction manager.
+   *
+   * @param command The decoded command
+   */
+  private void execute(Command command) {
+    switch (command.type) {
+      case BEGIN:
+        tm.beginTransaction(command.transaction, time, false);
+        break;
+
+      case BEGIN_RO:
+        tm.beginTransaction(command.transaction, time, true);
+        break;
+
+      case END:
+        tm.endTransaction(command.transaction, time);
+        break;
+
+      case FAIL:
+        tm.failSite(command.site, time);
+        break;
+
+      case RECOVER:
+        tm.recoverSite(command.site);
+        break;
+
+      case WRITE:
+        tm.writeRequest(command.transaction, command.variable, command.value);
+        break;
+
+      case READ:
+        tm.readRequest(command.transaction, command.variable);
+        break;
+
+      case DUMP:
+        tm.dump();
+        break;
+
+      case DUMP_SITE:
+        tm.dump(command.site);
+        break;
+
+      case DUMP_VARIABLE:
+        tm.dumpVariable(command.variable);
+        break;
+
+      default:
+        events.message("Error: instruction might be invalid.");
     }
   }
 }
@@ -0,0 +1,745 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * This class is the programmatic API of RepCRec for embedding the engine in-process. Every operation returns its
+ * outcome, e.g. the value read or whether a transaction committed, instead of only printing it.
+ * <p>
+ * Each single operation runs at its own time, like one line of an input file. A {@link Batch} runs many operations
+ * at one time and stores their outcomes in place, so that no result object is created per operation.
+ * <p>
+ * Single operations write and read values of every {@link Result.Type}. The values which are not ints are interned
+ * into a {@link ValueTable}, which the engine sweeps after an operation once a sweep is due, and a result keeps a
+ * copy of such a value so that it stays readable after the sweep. A batch writes ints only.
+ * <p>
+ * Ids of variables are parsed when an operation runs, so an operation on a variable which does not exist throws an
+ * IllegalArgumentException at that time, e.g. from {@link #execute(Batch)} for an operation of the batch.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see TransactionManager
+ */
+public class Engine {
+  private final TransactionManager tm;
+  private final SymbolTable transactionIds;
+  private final ValueTable values;
+  private final Recorder recorder;
+  private byte[] encoded = new byte[16];
+  private Result[] pending = new Result[64];
+  private int time = 1;
+
+  /**
+   * Constructor for an engine which does not print anything.
+   */
+  public Engine() {
+    this(EventSink.NONE);
+  }
+
+  /**
+   * Constructor for an engine which reports its events to given sink as well.
+   *
+   * @param events The sink receiving every event of the engine
+   * @throws NullPointerException if events is null
+   */
+  Engine(EventSink events) {
+    this(new SiteManager.Config(), events);
+  }
+
+  /**
+   * Constructor for an engine of given number of sites and variables which reports its events to given sink.
+   *
+   * @param config The number of sites, variables and the replication policy
+   * @param events The sink receiving every event of the engine
+   * @throws NullPointerException     if config or events is null
+   * @throws IllegalArgumentException if config is out of range
+   */
+  Engine(SiteManager.Config config, EventSink events) {
+    this(config, new SymbolTable(), events);
+  }
+
+  /**
+   * Constructor for an engine of given number of sites and variables which interns the ids of transactions into
+   * given table, e.g. the table the sink renders them from.
+   *
+   * @param config         The number of sites, variables and the replication policy
+   * @param transactionIds The table of transaction ids
+   * @param events         The sink receiving every event of the engine
+   * @throws NullPointerException     if config, transactionIds or events is null
+   * @throws IllegalArgumentException if config is out of range
+   */
+  Engine(SiteManager.Config config, SymbolTable transactionIds, EventSink events) {
+    this(config, transactionIds, new ValueTable(), events);
+  }
+
+  /**
+   * Constructor for an engine of given number of sites and variables which interns the ids of transactions and the
+   * values which are not ints into given tables, e.g. the tables the sink renders them from.
+   *
+   * @param config         The number of sites, variables and the replication policy
+   * @param transactionIds The table of transaction ids
+   * @param values         The table of values which are not ints
+   * @param events         The sink receiving every event of the engine
+   * @throws NullPointerException     if config, transactionIds, values or events is null
+   * @throws IllegalArgumentException if config is out of range
+   */
+  Engine(SiteManager.Config config, SymbolTable transactionIds, ValueTable values, EventSink events) {
+    this.transactionIds = Objects.requireNonNull(transactionIds, "transactionIds must not be null.");
+    this.values = Objects.requireNonNull(values, "values must not be null.");
+    this.recorder = new Recorder(Objects.requireNonNull(events, "events must not be null."));
+    this.tm = new TransactionManager(() -> time, config, recorder);
+  }
+
+  /**
+   * Begins a read-write transaction.
+   *
+   * @param transactionId The id of transaction
+   * @return The result with status OK
+   */
+  public Result begin(String transactionId) {
+    return single(Command.Type.BEGIN, transactionId, null, 0, 0);
+  }
+
+  /**
+   * Begins a read-only transaction.
+   *
+   * @param transactionId The id of transaction
+   * @return The result with status OK
+   */
+  public Result beginReadOnly(String transactionId) {
+    return single(Command.Type.BEGIN_RO, transactionId, null, 0, 0);
+  }
+
+  /**
+   * Reads a variable.
+   *
+   * @param transactionId The id of transaction
+   * @param variableId    The id of variable
+   * @return The result with status READ and the value read, or WAITING, ABORTED or REJECTED
+   * @throws IllegalArgumentException if variableId is not the id of a variable
+   */
+  public Result read(String transactionId, String variableId) {
+    return single(Command.Type.READ, transactionId, variableId, 0, 0);
+  }
+
+  /**
+   * Writes a variable.
+   *
+   * @param transactionId The id of transaction
+   * @param variableId    The id of variable
+   * @param value         The value to write
+   * @return The result with status WRITTEN, or WAITING, ABORTED or REJECTED
+   * @throws IllegalArgumentException if variableId is not the id of a variable
+   */
+  public Result write(String transactionId, String variableId, int value) {
+    return single(Command.Type.WRITE, transactionId, variableId, value, 0);
+  }
+
+  /**
+   * Writes a long value to a variable, which is a LONG value even if it fits an int.
+   *
+   * @param transactionId The id of transaction
+   * @param variableId    The id of variable
+   * @param value         The value to write
+   * @return The result with status WRITTEN, or WAITING, ABORTED or REJECTED
+   * @throws IllegalArgumentException if variableId is not the id of a variable
+   */
+  public Result write(String transactionId, String variableId, long value) {
+    Value.encodeLong(value, encoded, 0);
+    return single(Command.Type.WRITE, transactionId, variableId, values.intern(encoded, 0), 0);
+  }
+
+  /**
+   * Writes a double value to a variable.
+   *
+   * @param transactionId The id of transaction
+   * @param variableId    The id of variable
+   * @param value         The value to write
+   * @return The result with status WRITTEN, or WAITING, ABORTED or REJECTED
+   * @throws IllegalArgumentException if variableId is not the id of a variable
+   */
+  public Result write(String transactionId, String variableId, double value) {
+    Value.encodeDouble(value, encoded, 0);
+    return single(Command.Type.WRITE, transactionId, variableId, values.intern(encoded, 0), 0);
+  }
+
+  /**
+   * Writes a string value to a variable.
+   *
+   * @param transactionId The id of transaction
+   * @param variableId    The id of variable
+   * @param value         The value to write
+   * @return The result with status WRITTEN, or WAITING, ABORTED or REJECTED
+   * @throws NullPointerException     if value is null
+   * @throws IllegalArgumentException if variableId is not the id of a variable
+   */
+  public Result write(String transactionId, String variableId, String value) {
+    byte[] bytes = Objects.requireNonNull(value, "value must not be null.").getBytes(StandardCharsets.UTF_8);
+    return single(Command.Type.WRITE, transactionId, variableId, intern(Value.Type.STRING, bytes), 0);
+  }
+
+  /**
+   * Writes a blob value to a variable.
+   *
+   * @param transactionId The id of transaction
+   * @param variableId    The id of variable
+   * @param value         The bytes to write
+   * @return The result with status WRITTEN, or WAITING, ABORTED or REJECTED
+   * @throws NullPointerException     if value is null
+   * @throws IllegalArgumentException if variableId is not the id of a variable
+   */
+  public Result write(String transactionId, String variableId, byte[] value) {
+    Objects.requireNonNull(value, "value must not be null.");
+    return single(Command.Type.WRITE, transactionId, variableId, intern(Value.Type.BLOB, value), 0);
+  }
+
+  /**
+   * Ends a transaction.
+   *
+   * @param transactionId The id of transaction
+   * @return The result with status COMMITTED, ABORTED, WAITING or REJECTED
+   */
+  public Result end(String transactionId) {
+    return single(Command.Type.END, transactionId, null, 0, 0);
+  }
+
+  /**
+   * Fails a site.
+   *
+   * @param siteId The id of site
+   * @return The result with status OK
+   */
+  public Result fail(int siteId) {
+    return single(Command.Type.FAIL, null, null, 0, siteId);
+  }
+
+  /**
+   * Recovers a site.
+   *
+   * @param siteId The id of site
+   * @return The result with status OK
+   */
+  public Result recover(int siteId) {
+    return single(Command.Type.RECOVER, null, null, 0, siteId);
+  }
+
+  /**
+   * Runs every operation of given batch in order at one time and stores their outcomes in the batch. An operation
+   * which has to wait is reported as WAITING and not updated afterwards.
+   *
+   * @param batch The batch of operations
+   * @throws NullPointerException     if batch is null
+   * @throws IllegalArgumentException if an operation names a variable which does not exist, the operations before
+   *                                  it have run and stored their outcomes
+   */
+  public void execute(Batch batch) {
+    Objects.requireNonNull(batch, "batch must not be null.");
+    for (int i = 0; i < batch.size; i++) {
+      run(batch.types[i], batch.transactionIds[i], batch.variableIds[i], batch.values[i], batch.siteIds[i]);
+      batch.statuses[i] = recorder.status;
+      batch.results[i] = Value.isInt(recorder.value) ? (int) recorder.value : 0;
+    }
+    time++;
+    collectValues();
+  }
+
+  /**
+   * Gets the time the next operation or batch runs at.
+   *
+   * @return The current time
+   */
+  public int getTime() {
+    return time;
+  }
+
+  private Result single(Command.Type type, String transactionId, String variableId, long value, int siteId) {
+    int handle = run(type, transactionId, variableId, value, siteId);
+    time++;
+    Result result = new Result(recorder.status);
+    result.set(recorder.value, values);
+    if (result.status == Result.Status.WAITING) {
+      if (handle >= pending.length) {
+        pending = Arrays.copyOf(pending, Math.max(handle + 1, pending.length * 2));
+      }
+      pending[handle] = result;
+    }
+    collectValues();
+    return result;
+  }
+
+  private long intern(Value.Type type, byte[] bytes) {
+    if (encoded.length < 6 + bytes.length) {
+      encoded = new byte[Math.max(6 + bytes.length, encoded.length * 2)];
+    }
+    int at = Value.encodeBytesHeader(type, bytes.length, encoded, 0);
+    System.arraycopy(bytes, 0, encoded, at, bytes.length);
+    return values.intern(encoded, 0);
+  }
+
+  /**
+   * Sweeps the table of values once a sweep is due, keeping the values still held by the transaction manager. The
+   * events reported so far are flushed first, so that no event still holds a value.
+   */
+  private void collectValues() {
+    if (!values.isSweepDue()) {
+      return;
+    }
+    recorder.flush();
+    tm.forEachValue(values::mark);
+    values.sweep();
+  }
+
+  /**
+   * Interns the ids of an operation and runs it.
+   *
+   * @return The handle of transaction, or NO_ID if the operation has no transaction
+   */
+  private int run(Command.Type type, String transactionId, String variableId, long value, int siteId) {
+    int handle = transactionId == null ? EventSink.NO_ID : transactionIds.intern(transactionId);
+    recorder.start(handle);
+    boolean begun = handle != EventSink.NO_ID && tm.getTransactionStatus(handle) != null;
+    switch (type) {
+      case BEGIN:
+      case BEGIN_RO:
+        Objects.requireNonNull(transactionId, "transaction id must not be null");
+        tm.beginTransaction(handle, time, type == Command.Type.BEGIN_RO);
+        recorder.decide(Result.Status.OK, 0);
+        break;
+
+      case READ:
+        if (begun) {
+          tm.readRequest(handle, SiteManager.parseVariableId(variableId));
+        }
+        break;
+
+      case WRITE:
+        if (begun) {
+          tm.writeRequest(handle, SiteManager.parseVariableId(variableId), value);
+        }
+        break;
+
+      case END:
+        if (begun) {
+          tm.endTransaction(handle, time);
+          recorder.decide(Result.Status.WAITING, 0);
+        }
+        break;
+
+      case FAIL:
+        tm.failSite(siteId, time);
+        recorder.decide(Result.Status.OK, 0);
+        break;
+
+      case RECOVER:
+        tm.recoverSite(siteId);
+        recorder.decide(Result.Status.OK, 0);
+        break;
+
+      default:
+        throw new IllegalArgumentException("unsupported operation: " + type);
+    }
+    recorder.decide(Result.Status.REJECTED, 0);
+    recorder.stop();
+    return handle;
+  }
+
+  /**
+   * The outcome of one operation. A WAITING result is updated in place once the operation completes later.
+   */
+  public static final class Result {
+    /**
+     * Enum outcomes of an operation
+     */
+    public enum Status {
+      OK, READ, WRITTEN, WAITING, COMMITTED, ABORTED, REJECTED
+    }
+
+    /**
+     * Enum types of the value of an operation, declared in the order of the tags of values
+     */
+    public enum Type {
+      INT, LONG, DOUBLE, STRING, BLOB
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    private Status status;
+    private long word;
+    private byte[] encoded;
+
+    private Result(Status status) {
+      this.status = status;
+    }
+
+    /**
+     * Sets the value of the result, copying a value which is not an int out of given table.
+     */
+    private void set(long word, ValueTable values) {
+      this.word = word;
+      this.encoded = Value.isInt(word) ? null : values.encoded((int) word);
+    }
+
+    /**
+     * Gets the status of the operation.
+     *
+     * @return The status
+     */
+    public Status getStatus() {
+      return status;
+    }
+
+    /**
+     * Gets the int value read or written by the operation.
+     *
+     * @return The value, or 0 if the operation did not read or write an int
+     */
+    public int getValue() {
+      return encoded == null ? (int) word : 0;
+    }
+
+    /**
+     * Gets the type of the value read or written by the operation.
+     *
+     * @return The type, INT if the operation did not read or write
+     */
+    public Type getType() {
+      return encoded == null ? Type.INT : TYPES[Value.type(word).ordinal()];
+    }
+
+    /**
+     * Gets the int or long value read or written by the operation.
+     *
+     * @return The value
+     * @throws IllegalStateException if the value is not an int or a long
+     */
+    public long getLong() {
+      if (encoded == null) {
+        return word;
+      }
+      checkType(Type.LONG);
+      return Value.decodeLong(encoded, 0);
+    }
+
+    /**
+     * Gets the double value read or written by the operation.
+     *
+     * @return The value
+     * @throws IllegalStateException if the value is not a double
+     */
+    public double getDouble() {
+      checkType(Type.DOUBLE);
+      return Value.decodeDouble(encoded, 0);
+    }
+
+    /**
+     * Gets the string value read or written by the operation.
+     *
+     * @return The value
+     * @throws IllegalStateException if the value is not a string
+     */
+    public String getString() {
+      checkType(Type.STRING);
+      return new String(Value.decodeBytes(encoded, 0), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the blob value read or written by the operation.
+     *
+     * @return A copy of the bytes
+     * @throws IllegalStateException if the value is not a blob
+     */
+    public byte[] getBytes() {
+      checkType(Type.BLOB);
+      return Value.decodeBytes(encoded, 0);
+    }
+
+    private void checkType(Type type) {
+      if (getType() != type) {
+        throw new IllegalStateException("value is " + getType() + ", not " + type);
+      }
+    }
+
+    @Override
+    public String toString() {
+      if (status != Status.READ && status != Status.WRITTEN) {
+        return status.toString();
+      }
+      return status + "(" + (encoded == null ? Long.toString(word) : Value.toString(encoded, 0)) + ")";
+    }
+  }
+
+  /**
+   * A batch of operations running at one time. The outcome of each operation is stored in the batch by
+   * {@link Engine#execute(Batch)}. A batch can be cleared and reused.
+   * <p>
+   * Unlike a single result, an outcome stored in the batch is never updated: an operation which had to wait stays
+   * WAITING after its transaction resumes, and the outcome of the transaction is the one of a later end.
+   */
+  public static final class Batch {
+    private Command.Type[] types;
+    private String[] transactionIds;
+    private String[] variableIds;
+    private int[] values;
+    private int[] siteIds;
+    private Result.Status[] statuses;
+    private int[] results;
+    private int size;
+
+    /**
+     * Constructor for an empty batch.
+     *
+     * @param capacity The number of operations expected, the batch grows beyond it if needed
+     */
+    public Batch(int capacity) {
+      int initial = Math.max(capacity, 1);
+      types = new Command.Type[initial];
+      transactionIds = new String[initial];
+      variableIds = new String[initial];
+      values = new int[initial];
+      siteIds = new int[initial];
+      statuses = new Result.Status[initial];
+      results = new int[initial];
+    }
+
+    /**
+     * Adds beginning a read-write transaction.
+     *
+     * @return This batch
+     */
+    public Batch begin(String transactionId) {
+      return add(Command.Type.BEGIN, transactionId, null, 0, 0);
+    }
+
+    /**
+     * Adds beginning a read-only transaction.
+     *
+     * @return This batch
+     */
+    public Batch beginReadOnly(String transactionId) {
+      return add(Command.Type.BEGIN_RO, transactionId, null, 0, 0);
+    }
+
+    /**
+     * Adds reading a variable. The id of the variable is checked when the batch is executed.
+     *
+     * @return This batch
+     */
+    public Batch read(String transactionId, String variableId) {
+      return add(Command.Type.READ, transactionId, variableId, 0, 0);
+    }
+
+    /**
+     * Adds writing a variable. The id of the variable is checked when the batch is executed.
+     *
+     * @return This batch
+     */
+    public Batch write(String transactionId, String variableId, int value) {
+      return add(Command.Type.WRITE, transactionId, variableId, value, 0);
+    }
+
+    /**
+     * Adds ending a transaction.
+     *
+     * @return This batch
+     */
+    public Batch end(String transactionId) {
+      return add(Command.Type.END, transactionId, null, 0, 0);
+    }
+
+    /**
+     * Adds failing a site.
+     *
+     * @return This batch
+     */
+    public Batch fail(int siteId) {
+      return add(Command.Type.FAIL, null, null, 0, siteId);
+    }
+
+    /**
+     * Adds recovering a site.
+     *
+     * @return This batch
+     */
+    public Batch recover(int siteId) {
+      return add(Command.Type.RECOVER, null, null, 0, siteId);
+    }
+
+    /**
+     * Gets the number of operations in the batch.
+     *
+     * @return The number of operations
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Gets the status of the operation at given index, once the batch was executed.
+     *
+     * @param index The index of the operation
+     * @return The status when the batch was executed, WAITING even if the operation completed later
+     */
+    public Result.Status getStatus(int index) {
+      checkIndex(index);
+      return statuses[index];
+    }
+
+    /**
+     * Gets the int value read or written by the operation at given index, once the batch was executed.
+     *
+     * @param index The index of the operation
+     * @return The value, or 0 if the operation read a value which is not an int
+     */
+    public int getValue(int index) {
+      checkIndex(index);
+      return results[index];
+    }
+
+    /**
+     * Removes every operation from the batch.
+     */
+    public void clear() {
+      Arrays.fill(transactionIds, 0, size, null);
+      Arrays.fill(variableIds, 0, size, null);
+      Arrays.fill(statuses, 0, size, null);
+      size = 0;
+    }
+
+    private Batch add(Command.Type type, String transactionId, String variableId, int value, int siteId) {
+      if (size == types.length) {
+        int capacity = size * 2;
+        types = Arrays.copyOf(types, capacity);
+        transactionIds = Arrays.copyOf(transactionIds, capacity);
+        variableIds = Arrays.copyOf(variableIds, capacity);
+        values = Arrays.copyOf(values, capacity);
+        siteIds = Arrays.copyOf(siteIds, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        results = Arrays.copyOf(results, capacity);
+      }
+      types[size] = type;
+      transactionIds[size] = transactionId;
+      variableIds[size] = variableId;
+      values[size] = value;
+      siteIds[size] = siteId;
+      statuses[size] = null;
+      results[size] = 0;
+      size++;
+      return this;
+    }
+
+    private void checkIndex(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("index " + index + " out of batch of size " + size);
+      }
+    }
+  }
+
+  /**
+   * Derives the outcome of the running operation from the events of TransactionManager and completes the waiting
+   * results of other transactions, while passing every event on.
+   */
+  private final class Recorder implements EventSink {
+    private final EventSink delegate;
+    private int transactionId = NO_ID;
+    private Result.Status status;
+    private long value;
+
+    Recorder(EventSink delegate) {
+      this.delegate = delegate;
+    }
+
+    void start(int transactionId) {
+      this.transactionId = transactionId;
+      this.status = null;
+      this.value = 0;
+    }
+
+    void stop() {
+      this.transactionId = NO_ID;
+    }
+
+    void decide(Result.Status status, long value) {
+      if (this.status == null) {
+        this.status = status;
+        this.value = value;
+      }
+    }
+
+    @Override
+    public void accept(Event event, int transactionId, int variableId, long value, int siteId) {
+      delegate.accept(event, transactionId, variableId, value, siteId);
+      switch (event) {
+        case READ_ONLY_READ:
+        case READ_LOCK_GRANTED:
+          outcome(transactionId, Result.Status.READ, value);
+          break;
+        case WRITE_LOCK_GRANTED:
+        case WRITE_LOCK_GRANTED_ALL_SITES:
+        case WRITE_BUFFERED:
+          outcome(transactionId, Result.Status.WRITTEN, value);
+          break;
+        case COMMIT:
+          outcome(transactionId, Result.Status.COMMITTED, 0);
+          break;
+        case ABORT:
+        case ALREADY_ABORTED:
+        case DEADLOCK_VICTIM:
+        case WRITE_CONFLICT:
+        case READ_CONFLICT:
+        case ABORTED_BY_SITE_FAILURE:
+          outcome(transactionId, Result.Status.ABORTED, 0);
+          break;
+        case READ_WAITING:
+        case READ_SITE_DOWN:
+        case WRITE_WAITING:
+          outcome(transactionId, Result.Status.WAITING, 0);
+          break;
+        case READ_WHILE_WAITING:
+        case READ_AFTER_ABORT:
+        case WRITE_WHILE_WAITING:
+        case WRITE_AFTER_ABORT:
+        case END_NOT_BEGUN:
+        case WRITE_NOT_BEGUN:
+          outcome(transactionId, Result.Status.REJECTED, 0);
+          break;
+        default:
+      }
+    }
+
+    @Override
+    public void message(String text) {
+      delegate.message(text);
+    }
+
+    @Override
+    public void flush() {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+
+    private void outcome(int transactionId, Result.Status status, long value) {
+      if (transactionId == NO_ID) {
+        return;
+      }
+      if (transactionId == this.transactionId && this.status == null) {
+        decide(status, value);
+        if (status != Result.Status.ABORTED) {
+          return;
+        }
+      }
+      if (status == Result.Status.WAITING || status == Result.Status.REJECTED) {
+        return;
+      }
+      Result result = transactionId < pending.length ? pending[transactionId] : null;
+      if (result != null) {
+        pending[transactionId] = null;
+        result.status = status;
+        result.set(value, values);
+      }
+    }
+  }
+}
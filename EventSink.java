@@ -0,0 +1,141 @@
+/**
+ * This interface receives the events of TransactionManager, such as granted locks, waits, deadlock victims,
+ * commits, aborts and site failures, instead of printing each of them directly. An event is passed as its type and
+ * primitive fields, so that reporting it allocates nothing. Transactions are identified by the handles their names
+ * were interned to and variables by their number, e.g. 3 for x3.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see TextEventRenderer
+ * @see AsyncEventSink
+ */
+interface EventSink {
+  /**
+   * The sink which drops every event, e.g. for benchmarks.
+   */
+  EventSink NONE = (event, transactionId, variableId, value, siteId) -> {
+  };
+
+  /**
+   * The transaction or variable id of an event which does not use it.
+   */
+  int NO_ID = -1;
+
+  /**
+   * Enum types of event. Each type lists the fields it uses.
+   */
+  enum Event {
+    /** transactionId */
+    BEGIN,
+    /** transactionId */
+    BEGIN_READ_ONLY,
+    /** transactionId */
+    COMMIT,
+    /** transactionId */
+    ABORT,
+    /** transactionId */
+    ALREADY_ABORTED,
+    /** transactionId */
+    DEADLOCK_VICTIM,
+    /** transactionId, variableId, another transaction committed the variable after the transaction began */
+    WRITE_CONFLICT,
+    /** transactionId, variableId, another transaction committed the variable after the transaction read it */
+    READ_CONFLICT,
+    /** transactionId */
+    STILL_WAITING,
+    /** transactionId */
+    END_NOT_BEGUN,
+    /** transactionId */
+    WRITE_NOT_BEGUN,
+    /** transactionId */
+    ABORT_NOT_BEGUN,
+    /** transactionId, variableId, value */
+    READ_ONLY_READ,
+    /** transactionId, variableId, value */
+    READ_LOCK_GRANTED,
+    /** transactionId, variableId */
+    READ_WAITING,
+    /** transactionId */
+    READ_WHILE_WAITING,
+    /** transactionId, variableId */
+    READ_AFTER_ABORT,
+    /** transactionId, variableId */
+    READ_SITE_DOWN,
+    /** transactionId, variableId, value, siteId */
+    WRITE_LOCK_GRANTED,
+    /** transactionId, variableId, value */
+    WRITE_LOCK_GRANTED_ALL_SITES,
+    /** transactionId, variableId, value, the write is installed when the transaction commits */
+    WRITE_BUFFERED,
+    /** transactionId */
+    WRITE_WAITING,
+    /** transactionId, variableId */
+    WRITE_WHILE_WAITING,
+    /** transactionId, variableId */
+    WRITE_AFTER_ABORT,
+    /** variableId, siteId */
+    WRITE_SITE_DOWN,
+    /** variableId */
+    NO_AVAILABLE_SITE,
+    /** siteId */
+    SITE_FAILED,
+    /** transactionId, siteId */
+    ABORTED_BY_SITE_FAILURE,
+    /** siteId */
+    SITE_RECOVERED,
+    /** variableId, value is the id of the site it was moved from, siteId is the site it was moved to */
+    VARIABLE_MIGRATED,
+    /** variableId, the variable got a copy at every site */
+    VARIABLE_REPLICATED,
+    /** variableId, siteId is the only site keeping a copy */
+    VARIABLE_UNREPLICATED,
+    /** siteId, starts the dump of one site */
+    DUMP_SITE,
+    /** variableId, value, a value of a site dump followed by more values */
+    DUMP_VALUE,
+    /** variableId, value, the last value of a site dump */
+    DUMP_LAST_VALUE,
+    /** variableId, value, siteId */
+    DUMP_VARIABLE_AT_SITE,
+    /** variableId, value */
+    DUMP_VARIABLE_AT_ALL_SITES,
+    /** variableId, value, starts the list of sites holding the value */
+    DUMP_VARIABLE_AT_SITES,
+    /** siteId, one site of the list started by DUMP_VARIABLE_AT_SITES */
+    DUMP_VARIABLE_SITE,
+    /** ends the line of a dump */
+    DUMP_END
+  }
+
+  /**
+   * Receives one event. Ids not used by the type of event are NO_ID, other fields not used are 0.
+   *
+   * @param event         The type of event
+   * @param transactionId The handle of transaction
+   * @param variableId    The number of variable
+   * @param value         The value word read, written or dumped, see {@link Value}
+   * @param siteId        The id of site
+   */
+  void accept(Event event, int transactionId, int variableId, long value, int siteId);
+
+  /**
+   * Receives a free-form line of text, e.g. a message of Driver.
+   *
+   * @param text The text of the line
+   */
+  default void message(String text) {
+  }
+
+  /**
+   * Writes out every event received so far.
+   */
+  default void flush() {
+  }
+
+  /**
+   * Writes out every event received so far and releases the resources of the sink.
+   */
+  default void close() {
+    flush();
+  }
+}
@@ -0,0 +1,161 @@
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+/**
+ * This class stores the data of the copies at a site on the heap: arrays indexed by the number of variable, and a
+ * Variable holding the versions of each copy once it was committed. The tags of the current and committed values
+ * are one array which is only created once a value which is not an int is written, holding the tag of the current
+ * value in its low and the tag of the committed value in its high four bits.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see SiteStore
+ */
+class HeapSiteStore implements SiteStore {
+  private final int[] values;
+  private final int[] committedValues;
+  private final BitSet readable;
+  private final Variable[] versions;
+  private byte[] types;
+
+  /**
+   * Constructor for store of given number of variables.
+   *
+   * @param variableCount The number of variables in the database
+   * @return This store
+   */
+  HeapSiteStore(int variableCount) {
+    this.values = new int[variableCount + 1];
+    this.committedValues = new int[variableCount + 1];
+    this.readable = new BitSet(variableCount + 1);
+    this.versions = new Variable[variableCount + 1];
+  }
+
+  @Override
+  public void initialize(int index, int value) {
+    values[index] = value;
+    committedValues[index] = value;
+    readable.set(index);
+    versions[index] = null;
+    if (types != null) {
+      types[index] = 0;
+    }
+  }
+
+  @Override
+  public void copy(SiteStore source, int index) {
+    if (!(Objects.requireNonNull(source, "source must not be null.") instanceof HeapSiteStore)) {
+      throw new IllegalArgumentException("cannot copy from " + source.getClass().getName());
+    }
+    HeapSiteStore other = (HeapSiteStore) source;
+    values[index] = other.values[index];
+    committedValues[index] = other.committedValues[index];
+    readable.set(index, other.readable.get(index));
+    versions[index] = other.versions[index] == null ? null : new Variable(other.versions[index]);
+    if (other.types != null && other.types[index] != 0 && types == null) {
+      types = new byte[values.length];
+    }
+    if (types != null) {
+      types[index] = other.types == null ? 0 : other.types[index];
+    }
+  }
+
+  @Override
+  public void remove(int index) {
+    values[index] = 0;
+    committedValues[index] = 0;
+    readable.clear(index);
+    versions[index] = null;
+    if (types != null) {
+      types[index] = 0;
+    }
+  }
+
+  @Override
+  public long getValue(int index) {
+    return Value.word(types == null ? 0 : types[index] & 0xF, values[index]);
+  }
+
+  @Override
+  public void setValue(int index, long value) {
+    int tag = Value.tag(value);
+    if (tag != 0 && types == null) {
+      types = new byte[values.length];
+    }
+    values[index] = (int) value;
+    if (types != null) {
+      types[index] = (byte) (types[index] & 0xF0 | tag);
+    }
+  }
+
+  @Override
+  public long getCommittedValue(int index) {
+    return Value.word(types == null ? 0 : types[index] >> 4 & 0xF, committedValues[index]);
+  }
+
+  @Override
+  public void rollback(int index) {
+    values[index] = committedValues[index];
+    if (types != null) {
+      types[index] = (byte) (types[index] & 0xF0 | types[index] >> 4 & 0xF);
+    }
+  }
+
+  @Override
+  public boolean isReadable(int index) {
+    return readable.get(index);
+  }
+
+  @Override
+  public void setReadable(int index, boolean readable) {
+    this.readable.set(index, readable);
+  }
+
+  @Override
+  public int commit(int index, int time, int horizon) {
+    if (versions[index] == null) {
+      versions[index] = new Variable(getCommittedValue(index));
+    }
+    versions[index].commitValue(time, getValue(index));
+    committedValues[index] = values[index];
+    if (types != null) {
+      types[index] = (byte) (types[index] << 4 | types[index] & 0xF);
+    }
+    return versions[index].prune(horizon);
+  }
+
+  @Override
+  public long readVersion(int index, int time) {
+    Variable variable = versions[index];
+    return variable == null ? getCommittedValue(index) : variable.readOnly(time);
+  }
+
+  @Override
+  public int getCommitTime(int index) {
+    return versions[index] == null ? -1 : versions[index].getCommitTime();
+  }
+
+  @Override
+  public int getVersionCount(int index) {
+    return versions[index] == null ? 1 : versions[index].getVersionCount();
+  }
+
+  @Override
+  public void forEachValue(LongConsumer action) {
+    if (types == null) {
+      return;
+    }
+    for (int index = 0; index < values.length; index++) {
+      if ((types[index] & 0xF) != 0) {
+        action.accept(getValue(index));
+      }
+      if ((types[index] & 0xF0) != 0) {
+        action.accept(getCommittedValue(index));
+      }
+      if (versions[index] != null) {
+        versions[index].forEachValue(action);
+      }
+    }
+  }
+}
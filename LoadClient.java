@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * This class drives a running Server with many concurrent client sessions from a single thread. Each session runs
+ * its own transactions one after another, sending their commands one per request and keeping up to a given number
+ * of requests in flight. It reports throughput, the number of commits and the latency of the requests.
+ * <p>
+ * Every setting is given as key=value argument, e.g. {@code java LoadClient sessions=64 depth=4}.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Server
+ */
+class LoadClient {
+  private static final String KEYS = "port, sessions, transactions, length, depth, readRatio, zipf, seed, "
+          + "variables";
+
+  private int port = Server.DEFAULT_PORT;
+  private int sessions = 16;
+  private int transactions = 1_000;
+  private int length = 4;
+  private int depth = 1;
+  private double readRatio = 0.8;
+  private double zipf = 0.99;
+  private long seed = 42;
+  private int variables = 20;
+
+  private final WorkloadGenerator.Histogram latency = new WorkloadGenerator.Histogram();
+  private long requests;
+  private long commits;
+
+  public static void main(String[] args) {
+    LoadClient client = new LoadClient();
+    try {
+      client.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error: " + e.getMessage());
+      System.out.println("Usage: java LoadClient [key=value ...]");
+      System.out.println("Keys: " + KEYS);
+      System.exit(1);
+      return;
+    }
+    try {
+      long elapsed = client.run();
+      client.report(System.out, elapsed);
+    } catch (IOException e) {
+      System.out.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  private void parse(String[] args) {
+    for (String arg : args) {
+      int split = arg.indexOf('=');
+      if (split < 0) {
+        throw new IllegalArgumentException("argument must be key=value: " + arg);
+      }
+      String key = arg.substring(0, split);
+      String value = arg.substring(split + 1);
+      try {
+        switch (key) {
+          case "port":
+            port = Integer.parseInt(value);
+            break;
+          case "sessions":
+            sessions = Integer.parseInt(value);
+            break;
+          case "transactions":
+            transactions = Integer.parseInt(value);
+            break;
+          case "length":
+            length = Integer.parseInt(value);
+            break;
+          case "depth":
+            depth = Integer.parseInt(value);
+            break;
+          case "readRatio":
+            readRatio = Double.parseDouble(value);
+            break;
+          case "zipf":
+            zipf = Double.parseDouble(value);
+            break;
+          case "seed":
+            seed = Long.parseLong(value);
+            break;
+          case "variables":
+            variables = Integer.parseInt(value);
+            break;
+          default:
+            throw new IllegalArgumentException("unknown key: " + key);
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("invalid value for " + key + ": " + value);
+      }
+    }
+    if (sessions < 1 || depth < 1 || variables < 1 || transactions < 0 || length < 0) {
+      throw new IllegalArgumentException("sessions, depth, variables must be positive, transactions, length must "
+              + "not be negative.");
+    }
+    if (readRatio < 0 || readRatio > 1 || zipf < 0) {
+      throw new IllegalArgumentException("readRatio must be in [0, 1], zipf must not be negative.");
+    }
+  }
+
+  /**
+   * Runs every session until all of their transactions ended.
+   *
+   * @return The elapsed time in nanoseconds
+   * @throws IOException if the server cannot be reached
+   */
+  long run() throws IOException {
+    Random random = new Random(seed);
+    WorkloadGenerator.ZipfGenerator keys = new WorkloadGenerator.ZipfGenerator(variables, zipf, random);
+    InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    long start = System.nanoTime();
+    try (Selector selector = Selector.open()) {
+      int open = 0;
+      for (int i = 0; i < sessions; i++) {
+        Session session = new Session(i, random, keys, SocketChannel.open(address));
+        if (session.isDone()) {
+          session.channel.close();
+          continue;
+        }
+        session.channel.configureBlocking(false);
+        session.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        session.key = session.channel.register(selector, SelectionKey.OP_READ, session);
+        session.send();
+        open++;
+      }
+      while (open > 0) {
+        selector.select();
+        Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+        while (selected.hasNext()) {
+          SelectionKey key = selected.next();
+          selected.remove();
+          Session session = (Session) key.attachment();
+          if (key.isValid() && key.isWritable()) {
+            session.send();
+          }
+          if (key.isValid() && key.isReadable()) {
+            session.receive();
+            session.send();
+          }
+          if (session.isDone()) {
+            key.cancel();
+            session.channel.close();
+            open--;
+          }
+        }
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Prints the result of the run.
+   *
+   * @param out     The stream to print to
+   * @param elapsed The elapsed time in nanoseconds
+   */
+  void report(PrintStream out, long elapsed) {
+    double seconds = elapsed / 1e9;
+    out.println(">>>> Load: port=" + port + " sessions=" + sessions + " transactions=" + transactions + " length="
+            + length + " depth=" + depth + " readRatio=" + readRatio + " zipf=" + zipf + " seed=" + seed
+            + " variables=" + variables);
+    out.printf("elapsed: %.3f s, requests: %d (%.1f requests/sec), transactions: %d (%.1f transactions/sec), "
+                    + "commits: %d%n", seconds, requests, requests / seconds, (long) sessions * transactions,
+            (long) sessions * transactions / seconds, commits);
+    out.printf("latency(us) mean: %.2f, p50: %.2f, p99: %.2f, p99.9: %.2f, max: %.2f%n", latency.mean() / 1e3,
+            latency.percentile(0.5) / 1e3, latency.percentile(0.99) / 1e3, latency.percentile(0.999) / 1e3,
+            latency.max / 1e3);
+  }
+
+  /**
+   * One connection running its transactions one after another.
+   */
+  private final class Session {
+    private final int id;
+    private final Random random;
+    private final WorkloadGenerator.ZipfGenerator keys;
+    private final SocketChannel channel;
+    private final long[] sentAt = new long[depth];
+    private SelectionKey key;
+    private ByteBuffer out = ByteBuffer.allocate(1 << 12);
+    private final ByteBuffer in = ByteBuffer.allocate(1 << 16);
+    private final StringBuilder line = new StringBuilder();
+    private int transaction;
+    private int step;
+    private long sent;
+    private long received;
+
+    Session(int id, Random random, WorkloadGenerator.ZipfGenerator keys, SocketChannel channel) {
+      this.id = id;
+      this.random = random;
+      this.keys = keys;
+      this.channel = channel;
+      out.flip();
+    }
+
+    /**
+     * Gets whether every transaction of the session ended and every response arrived.
+     *
+     * @return true if the session is done
+     */
+    boolean isDone() {
+      return transaction == transactions && received == sent;
+    }
+
+    /**
+     * Sends the next requests while fewer than depth requests are in flight.
+     */
+    void send() throws IOException {
+      if (!out.hasRemaining()) {
+        out.clear();
+        while (transaction < transactions && sent - received < depth) {
+          byte[] request = nextRequest().getBytes(StandardCharsets.US_ASCII);
+          if (out.remaining() < request.length) {
+            break;
+          }
+          out.put(request);
+          sentAt[(int) (sent++ % depth)] = System.nanoTime();
+          requests++;
+        }
+        out.flip();
+      }
+      channel.write(out);
+      key.interestOps(out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Reads the responses that arrived. Each response ends with an empty line.
+     */
+    void receive() throws IOException {
+      if (channel.read(in) < 0) {
+        throw new IOException("server closed the connection.");
+      }
+      in.flip();
+      while (in.hasRemaining()) {
+        char c = (char) in.get();
+        if (c == '\r') {
+          continue;
+        }
+        if (c != '\n') {
+          line.append(c);
+          continue;
+        }
+        if (line.length() == 0) {
+          latency.record(System.nanoTime() - sentAt[(int) (received++ % depth)]);
+        } else if (line.length() > 8 && line.lastIndexOf(" commits") == line.length() - 8) {
+          commits++;
+        }
+        line.setLength(0);
+      }
+      in.clear();
+    }
+
+    private String nextRequest() {
+      String transactionId = "C" + id + "T" + (transaction + 1);
+      int current = step++;
+      if (current == 0) {
+        return "begin(" + transactionId + ")\n";
+      }
+      if (current <= length) {
+        int variable = 1 + keys.next();
+        if (random.nextDouble() < readRatio) {
+          return "R(" + transactionId + ",x" + variable + ")\n";
+        }
+        return "W(" + transactionId + ",x" + variable + "," + random.nextInt(1000) + ")\n";
+      }
+      step = 0;
+      transaction++;
+      return "end(" + transactionId + ")\n";
+    }
+  }
+}
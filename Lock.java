@@ -14,18 +14,18 @@ class Lock {
   }
 
   private final Type type;
-  private final String transactionId;
-  private final String variableId;
+  private final int transactionId;
+  private final int variableId;
 
   /**
    * Constructor for lock object. Creates a new lock object with given type, transaction id, variable id.
    *
    * @param type          The type of the lock
-   * @param transactionId The id of transaction
-   * @param variableId    The id of variable
+   * @param transactionId The handle of transaction
+   * @param variableId    The number of variable
    * @return This lock
    */
-  Lock(Type type, String transactionId, String variableId) {
+  Lock(Type type, int transactionId, int variableId) {
     this.type = type;
     this.transactionId = transactionId;
     this.variableId = variableId;
@@ -43,9 +43,9 @@ class Lock {
   /**
    * Gets the transaction id
    *
-   * @return The id of transaction
+   * @return The handle of transaction
    */
-  String getTransactionId() {
+  int getTransactionId() {
     return transactionId;
   }
 }
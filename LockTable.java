@@ -0,0 +1,467 @@
+import java.util.*;
+
+/**
+ * This class represents the lock table of a site. The locks held or waited for on a variable form a queue in the
+ * order they were requested, and the header of each variable holds the head and the tail of its queue and the first
+ * and the last write lock in it, so that no request scans the queue unless it has to wait:
+ * <ul>
+ * <li>a read lock is granted if the variable is not locked, or if the reading transaction has a lock queued in front
+ * of every write lock of another transaction, which is one comparison of the position of its first lock with the
+ * first write lock;</li>
+ * <li>a write lock is granted if the variable is not locked, or if the writing transaction holds the head of the
+ * queue, whose read lock is then upgraded in place.</li>
+ * </ul>
+ * A request which is not granted is queued at the tail, and only then are the transactions in front of it walked to
+ * add them to the transactions it waits for.
+ * <p>
+ * The locks are pooled in parallel int arrays and linked into the queue of their variable and the list of their
+ * transaction, and the first lock of each transaction on each variable is found in an open addressing table, so that
+ * acquiring, upgrading and releasing a lock allocates nothing once the arrays have grown.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Site
+ * @see Lock
+ */
+class LockTable {
+  private static final int NONE = -1;
+  private static final long EMPTY = -1;
+
+  private final int[] head;
+  private final int[] tail;
+  private final int[] firstWrite;
+  private final int[] lastWrite;
+  private final int[] released;
+  private final BitSet lockedVariables;
+  private int releases;
+
+  private int[] transactions = new int[16];
+  private int[] variables = new int[16];
+  private boolean[] writes = new boolean[16];
+  private long[] positions = new long[16];
+  private int[] next = new int[16];
+  private int[] previous = new int[16];
+  private int[] nextWrite = new int[16];
+  private int[] previousWrite = new int[16];
+  private int[] nextOfTransaction = new int[16];
+  private int[] previousOfTransaction = new int[16];
+  private int top;
+  private int free = NONE;
+  private int size;
+  private long position;
+
+  private int[] firstOfTransaction = new int[16];
+
+  private long[] keys = new long[32];
+  private int[] firstLocks = new int[32];
+  private int[] lockCounts = new int[32];
+  private int keyCount;
+
+  /**
+   * Constructor for an empty lock table of given number of variables.
+   *
+   * @param variableCount The number of variables in the database
+   * @return This lock table
+   */
+  LockTable(int variableCount) {
+    head = new int[variableCount + 1];
+    tail = new int[variableCount + 1];
+    firstWrite = new int[variableCount + 1];
+    lastWrite = new int[variableCount + 1];
+    released = new int[variableCount + 1];
+    Arrays.fill(head, NONE);
+    Arrays.fill(tail, NONE);
+    Arrays.fill(firstWrite, NONE);
+    Arrays.fill(lastWrite, NONE);
+    lockedVariables = new BitSet(variableCount + 1);
+    Arrays.fill(firstOfTransaction, NONE);
+    Arrays.fill(keys, EMPTY);
+  }
+
+  /**
+   * Requests a read lock on variable with given number and adds the transactions holding or waiting for a write lock
+   * on it to the transactions the reading transaction waits for if it is not granted.
+   *
+   * @param transactionId The handle of transaction
+   * @param variableId    The number of variable
+   * @param waitsFor      The transactions the reading transaction waits for in the wait for graph
+   * @return true if the read lock is granted
+   * @throws NullPointerException if waitsFor is null
+   */
+  boolean readLock(int transactionId, int variableId, BitSet waitsFor) {
+    if (head[variableId] == NONE) {
+      add(transactionId, variableId, false);
+      return true;
+    }
+    int own = firstLock(transactionId, variableId);
+    int write = firstWrite[variableId];
+    if (own != NONE && (write == NONE || positions[own] <= positions[write])) {
+      return true;
+    }
+    for (int lock = write; lock != NONE; lock = nextWrite[lock]) {
+      waitsFor.set(transactions[lock]);
+    }
+    add(transactionId, variableId, false);
+    return write == NONE;
+  }
+
+  /**
+   * Requests a write lock on variable with given number. If another transaction holds the head of the queue, the
+   * write lock is queued behind the other locks and their transactions are added to the transactions the writing
+   * transaction waits for. A read lock of the writing transaction at the head is upgraded.
+   *
+   * @param transactionId The handle of transaction
+   * @param variableId    The number of variable
+   * @param waitsFor      The transactions the writing transaction waits for in the wait for graph
+   * @return true if the write lock is granted
+   * @throws NullPointerException if waitsFor is null
+   */
+  boolean writeLock(int transactionId, int variableId, BitSet waitsFor) {
+    int first = head[variableId];
+    if (first == NONE) {
+      add(transactionId, variableId, true);
+      return true;
+    }
+    if (transactions[first] == transactionId) {
+      if (!writes[first]) {
+        // the head is in front of every other lock, so it becomes the first write lock
+        writes[first] = true;
+        previousWrite[first] = NONE;
+        nextWrite[first] = firstWrite[variableId];
+        if (firstWrite[variableId] == NONE) {
+          lastWrite[variableId] = first;
+        } else {
+          previousWrite[firstWrite[variableId]] = first;
+        }
+        firstWrite[variableId] = first;
+      }
+      return true;
+    }
+    for (int lock = first; lock != NONE; lock = next[lock]) {
+      if (transactions[lock] != transactionId) {
+        waitsFor.set(transactions[lock]);
+      }
+    }
+    add(transactionId, variableId, true);
+    return false;
+  }
+
+  /**
+   * Releases the first lock of transaction with given handle on each variable it locked.
+   *
+   * @param transactionId The handle of transaction
+   */
+  void release(int transactionId) {
+    if (transactionId >= firstOfTransaction.length) {
+      return;
+    }
+    releases++;
+    int lock = firstOfTransaction[transactionId];
+    while (lock != NONE) {
+      int following = nextOfTransaction[lock];
+      int variableId = variables[lock];
+      // the list of the transaction is in the order of request, so the first lock seen on a variable is its first
+      if (released[variableId] != releases) {
+        released[variableId] = releases;
+        remove(lock);
+      }
+      lock = following;
+    }
+  }
+
+  /**
+   * Releases every lock in the table.
+   */
+  void clear() {
+    for (int v = lockedVariables.nextSetBit(0); v >= 0; v = lockedVariables.nextSetBit(v + 1)) {
+      head[v] = NONE;
+      tail[v] = NONE;
+      firstWrite[v] = NONE;
+      lastWrite[v] = NONE;
+    }
+    lockedVariables.clear();
+    Arrays.fill(firstOfTransaction, NONE);
+    Arrays.fill(keys, EMPTY);
+    keyCount = 0;
+    top = 0;
+    free = NONE;
+    size = 0;
+  }
+
+  /**
+   * Gets the number of locks held or waited for.
+   *
+   * @return The number of locks
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Checks if any transaction holds or waits for a lock on variable with given number.
+   *
+   * @param variableId The number of variable
+   * @return true if there is a lock on variable
+   */
+  boolean isLocked(int variableId) {
+    return head[variableId] != NONE;
+  }
+
+  /**
+   * Adds the transactions holding or waiting for any lock to given set.
+   *
+   * @param holders The set of handles of transactions
+   * @throws NullPointerException if holders is null
+   */
+  void addHolders(BitSet holders) {
+    Objects.requireNonNull(holders, "holders must not be null.");
+    for (int v = lockedVariables.nextSetBit(0); v >= 0; v = lockedVariables.nextSetBit(v + 1)) {
+      for (int lock = head[v]; lock != NONE; lock = next[lock]) {
+        holders.set(transactions[lock]);
+      }
+    }
+  }
+
+  /**
+   * Gets a copy of the queues of locks, keyed by the number of each locked variable.
+   *
+   * @return The queues of locks
+   */
+  Map<Integer, List<Lock>> toMap() {
+    Map<Integer, List<Lock>> copy = new TreeMap<>();
+    for (int v = lockedVariables.nextSetBit(0); v >= 0; v = lockedVariables.nextSetBit(v + 1)) {
+      List<Lock> locks = new ArrayList<>();
+      for (int lock = head[v]; lock != NONE; lock = next[lock]) {
+        locks.add(new Lock(writes[lock] ? Lock.Type.WRITE : Lock.Type.READ, transactions[lock], v));
+      }
+      copy.put(v, locks);
+    }
+    return copy;
+  }
+
+  /**
+   * Queues a new lock at the tail of the queue of its variable.
+   */
+  private void add(int transactionId, int variableId, boolean write) {
+    int lock = allocate();
+    transactions[lock] = transactionId;
+    variables[lock] = variableId;
+    writes[lock] = write;
+    positions[lock] = position++;
+
+    next[lock] = NONE;
+    previous[lock] = tail[variableId];
+    if (tail[variableId] == NONE) {
+      head[variableId] = lock;
+      lockedVariables.set(variableId);
+    } else {
+      next[tail[variableId]] = lock;
+    }
+    tail[variableId] = lock;
+
+    if (write) {
+      nextWrite[lock] = NONE;
+      previousWrite[lock] = lastWrite[variableId];
+      if (lastWrite[variableId] == NONE) {
+        firstWrite[variableId] = lock;
+      } else {
+        nextWrite[lastWrite[variableId]] = lock;
+      }
+      lastWrite[variableId] = lock;
+    }
+
+    if (transactionId >= firstOfTransaction.length) {
+      int length = firstOfTransaction.length;
+      firstOfTransaction = Arrays.copyOf(firstOfTransaction, Math.max(transactionId + 1, length * 2));
+      Arrays.fill(firstOfTransaction, length, firstOfTransaction.length, NONE);
+    }
+    // the list of a transaction is kept in the order of request, so a new lock goes to its tail through the head
+    int first = firstOfTransaction[transactionId];
+    nextOfTransaction[lock] = NONE;
+    if (first == NONE) {
+      firstOfTransaction[transactionId] = lock;
+      previousOfTransaction[lock] = lock;
+    } else {
+      int last = previousOfTransaction[first];
+      nextOfTransaction[last] = lock;
+      previousOfTransaction[lock] = last;
+      previousOfTransaction[first] = lock;
+    }
+
+    int slot = slot(transactionId, variableId);
+    if (keys[slot] == EMPTY) {
+      keys[slot] = key(transactionId, variableId);
+      firstLocks[slot] = lock;
+      lockCounts[slot] = 1;
+      if (++keyCount * 2 > keys.length) {
+        rehash();
+      }
+    } else {
+      lockCounts[slot]++;
+    }
+    size++;
+  }
+
+  /**
+   * Removes the first lock of its transaction on its variable from the table.
+   */
+  private void remove(int lock) {
+    int transactionId = transactions[lock];
+    int variableId = variables[lock];
+
+    int slot = slot(transactionId, variableId);
+    if (--lockCounts[slot] == 0) {
+      delete(slot);
+    } else {
+      // a transaction only locks a variable again while it waits, which is rare, so the queue is walked
+      int following = next[lock];
+      while (transactions[following] != transactionId) {
+        following = next[following];
+      }
+      firstLocks[slot] = following;
+    }
+
+    if (previous[lock] == NONE) {
+      head[variableId] = next[lock];
+    } else {
+      next[previous[lock]] = next[lock];
+    }
+    if (next[lock] == NONE) {
+      tail[variableId] = previous[lock];
+    } else {
+      previous[next[lock]] = previous[lock];
+    }
+    if (head[variableId] == NONE) {
+      lockedVariables.clear(variableId);
+    }
+
+    if (writes[lock]) {
+      if (previousWrite[lock] == NONE) {
+        firstWrite[variableId] = nextWrite[lock];
+      } else {
+        nextWrite[previousWrite[lock]] = nextWrite[lock];
+      }
+      if (nextWrite[lock] == NONE) {
+        lastWrite[variableId] = previousWrite[lock];
+      } else {
+        previousWrite[nextWrite[lock]] = previousWrite[lock];
+      }
+    }
+
+    int first = firstOfTransaction[transactionId];
+    if (lock == first) {
+      int following = nextOfTransaction[lock];
+      firstOfTransaction[transactionId] = following;
+      if (following != NONE) {
+        previousOfTransaction[following] = previousOfTransaction[lock];
+      }
+    } else {
+      nextOfTransaction[previousOfTransaction[lock]] = nextOfTransaction[lock];
+      if (nextOfTransaction[lock] == NONE) {
+        previousOfTransaction[first] = previousOfTransaction[lock];
+      } else {
+        previousOfTransaction[nextOfTransaction[lock]] = previousOfTransaction[lock];
+      }
+    }
+
+    next[lock] = free;
+    free = lock;
+    size--;
+  }
+
+  /**
+   * Gets the first lock of given transaction on given variable, or NONE if it has none.
+   */
+  private int firstLock(int transactionId, int variableId) {
+    int slot = slot(transactionId, variableId);
+    return keys[slot] == EMPTY ? NONE : firstLocks[slot];
+  }
+
+  /**
+   * Takes a lock from the free list, or from the end of the pool, which doubles if it is full.
+   */
+  private int allocate() {
+    if (free != NONE) {
+      int lock = free;
+      free = next[lock];
+      return lock;
+    }
+    if (top == transactions.length) {
+      int length = top * 2;
+      transactions = Arrays.copyOf(transactions, length);
+      variables = Arrays.copyOf(variables, length);
+      writes = Arrays.copyOf(writes, length);
+      positions = Arrays.copyOf(positions, length);
+      next = Arrays.copyOf(next, length);
+      previous = Arrays.copyOf(previous, length);
+      nextWrite = Arrays.copyOf(nextWrite, length);
+      previousWrite = Arrays.copyOf(previousWrite, length);
+      nextOfTransaction = Arrays.copyOf(nextOfTransaction, length);
+      previousOfTransaction = Arrays.copyOf(previousOfTransaction, length);
+    }
+    return top++;
+  }
+
+  private static long key(int transactionId, int variableId) {
+    return (long) transactionId << 32 | variableId;
+  }
+
+  /**
+   * Gets the slot holding given transaction and variable, or the empty slot where they would be added.
+   */
+  private int slot(int transactionId, int variableId) {
+    long key = key(transactionId, variableId);
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (keys[slot] != EMPTY && keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Empties given slot, moving back the keys after it which would no longer be found past the gap.
+   */
+  private void delete(int slot) {
+    int mask = keys.length - 1;
+    int gap = slot;
+    for (int i = (gap + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+      int home = hash(keys[i]) & mask;
+      if (((i - home) & mask) >= ((i - gap) & mask)) {
+        keys[gap] = keys[i];
+        firstLocks[gap] = firstLocks[i];
+        lockCounts[gap] = lockCounts[i];
+        gap = i;
+      }
+    }
+    keys[gap] = EMPTY;
+    keyCount--;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldFirstLocks = firstLocks;
+    int[] oldLockCounts = lockCounts;
+    keys = new long[oldKeys.length * 2];
+    firstLocks = new int[keys.length];
+    lockCounts = new int[keys.length];
+    Arrays.fill(keys, EMPTY);
+    int mask = keys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (keys[slot] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        firstLocks[slot] = oldFirstLocks[i];
+        lockCounts[slot] = oldLockCounts[i];
+      }
+    }
+  }
+
+  private static int hash(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ hash >>> 32);
+  }
+}
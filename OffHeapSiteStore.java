@@ -0,0 +1,350 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+
+/**
+ * This class stores the data of the copies at a site in direct buffers outside the heap, so that millions of
+ * variables cost no objects for the garbage collector to trace. Each piece of data is a dense column indexed by the
+ * number of variable: the current values, the committed values, the flags and the headers of the version chains.
+ * <p>
+ * The versions live in one version area as pairs of commit time and value. The chain of each copy is a block of
+ * the area holding its versions in order of time, and its header holds the offset, size and capacity of the block.
+ * A chain which outgrows its block moves to a new block of twice the capacity at the end of the area, and the area
+ * is compacted into a new buffer once it is full.
+ * <p>
+ * The flags of a copy hold the tags of the types of its current and committed values next to whether it is
+ * readable. The tags of the versions are one byte per version in a second area, which is only created once a
+ * value which is not an int is committed, so a store of ints costs no more than before.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see SiteStore
+ */
+class OffHeapSiteStore implements SiteStore {
+  private static final byte READABLE = 1;
+  private static final int VALUE_TAG = 1;
+  private static final int COMMITTED_TAG = 4;
+  private static final int TAG_MASK = 7;
+  private static final int OFFSET = 0;
+  private static final int SIZE = 1;
+  private static final int CAPACITY = 2;
+  private static final int HEADER = 3;
+  private static final int MIN_CAPACITY = 4;
+
+  private final int variableCount;
+  private final IntBuffer values;
+  private final IntBuffer committedValues;
+  private final ByteBuffer flags;
+  private final IntBuffer headers;
+  private IntBuffer versions;
+  private ByteBuffer versionTypes;
+  private int top;
+  private int garbage;
+
+  /**
+   * Constructor for store of given number of variables.
+   *
+   * @param variableCount The number of variables in the database
+   * @return This store
+   */
+  OffHeapSiteStore(int variableCount) {
+    this.variableCount = variableCount;
+    this.values = ints(variableCount + 1);
+    this.committedValues = ints(variableCount + 1);
+    this.flags = ByteBuffer.allocateDirect(variableCount + 1);
+    this.headers = ints((variableCount + 1) * HEADER);
+    this.versions = ints(64);
+  }
+
+  private static IntBuffer ints(int count) {
+    return ByteBuffer.allocateDirect(count * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+
+  @Override
+  public void initialize(int index, int value) {
+    values.put(index, value);
+    committedValues.put(index, value);
+    flags.put(index, READABLE);
+    free(index);
+  }
+
+  @Override
+  public void copy(SiteStore source, int index) {
+    if (!(Objects.requireNonNull(source, "source must not be null.") instanceof OffHeapSiteStore)) {
+      throw new IllegalArgumentException("cannot copy from " + source.getClass().getName());
+    }
+    OffHeapSiteStore other = (OffHeapSiteStore) source;
+    values.put(index, other.values.get(index));
+    committedValues.put(index, other.committedValues.get(index));
+    flags.put(index, other.flags.get(index));
+    free(index);
+    int size = other.headers.get(index * HEADER + SIZE);
+    if (size > 0) {
+      allocate(index, size);
+      int from = other.headers.get(index * HEADER + OFFSET);
+      int to = headers.get(index * HEADER + OFFSET);
+      for (int i = 0; i < size * 2; i += 2) {
+        putVersion(to + i, other.versions.get(from + i), other.getVersion(from + i));
+      }
+      headers.put(index * HEADER + SIZE, size);
+    }
+  }
+
+  @Override
+  public void remove(int index) {
+    values.put(index, 0);
+    committedValues.put(index, 0);
+    flags.put(index, (byte) 0);
+    free(index);
+  }
+
+  @Override
+  public long getValue(int index) {
+    return Value.word(flags.get(index) >> VALUE_TAG & TAG_MASK, values.get(index));
+  }
+
+  @Override
+  public void setValue(int index, long value) {
+    values.put(index, (int) value);
+    int flag = flags.get(index) & ~(TAG_MASK << VALUE_TAG);
+    flags.put(index, (byte) (flag | Value.tag(value) << VALUE_TAG));
+  }
+
+  @Override
+  public long getCommittedValue(int index) {
+    return Value.word(flags.get(index) >> COMMITTED_TAG & TAG_MASK, committedValues.get(index));
+  }
+
+  @Override
+  public void rollback(int index) {
+    setValue(index, getCommittedValue(index));
+  }
+
+  @Override
+  public boolean isReadable(int index) {
+    return (flags.get(index) & READABLE) != 0;
+  }
+
+  @Override
+  public void setReadable(int index, boolean readable) {
+    int flag = flags.get(index);
+    flags.put(index, (byte) (readable ? flag | READABLE : flag & ~READABLE));
+  }
+
+  @Override
+  public int commit(int index, int time, int horizon) {
+    int header = index * HEADER;
+    if (headers.get(header + SIZE) == 0) {
+      // the initial value is the first version
+      allocate(index, MIN_CAPACITY);
+      putVersion(headers.get(header + OFFSET), 0, getCommittedValue(index));
+      headers.put(header + SIZE, 1);
+    }
+    long value = getValue(index);
+    int size = headers.get(header + SIZE);
+    int offset = headers.get(header + OFFSET);
+    int i;
+    if (time > versions.get(offset + (size - 1) * 2)) {
+      i = size;
+    } else {
+      i = search(offset, size, time);
+      if (i >= 0) {
+        putVersion(offset + i * 2, time, value);
+        setCommittedValue(index, value);
+        return prune(index, horizon);
+      }
+      // a version committed out of order is inserted at its place in the chain
+      i = -i - 1;
+    }
+    if (size == headers.get(header + CAPACITY)) {
+      allocate(index, size * 2);
+      offset = headers.get(header + OFFSET);
+    }
+    for (int j = size * 2 - 2; j >= i * 2; j -= 2) {
+      putVersion(offset + j + 2, versions.get(offset + j), getVersion(offset + j));
+    }
+    putVersion(offset + i * 2, time, value);
+    headers.put(header + SIZE, size + 1);
+    setCommittedValue(index, value);
+    return prune(index, horizon);
+  }
+
+  private void setCommittedValue(int index, long value) {
+    committedValues.put(index, (int) value);
+    int flag = flags.get(index) & ~(TAG_MASK << COMMITTED_TAG);
+    flags.put(index, (byte) (flag | Value.tag(value) << COMMITTED_TAG));
+  }
+
+  private int prune(int index, int horizon) {
+    int header = index * HEADER;
+    int size = headers.get(header + SIZE);
+    int offset = headers.get(header + OFFSET);
+    if (size < 2 || versions.get(offset + 2) >= horizon) {
+      return 0;
+    }
+    int i = search(offset, size, horizon);
+    // the newest version committed before the horizon is kept
+    i = i >= 0 ? i - 1 : -i - 2;
+    for (int j = 0; j < (size - i) * 2; j += 2) {
+      putVersion(offset + j, versions.get(offset + i * 2 + j), getVersion(offset + i * 2 + j));
+    }
+    headers.put(header + SIZE, size - i);
+    return i;
+  }
+
+  @Override
+  public long readVersion(int index, int time) {
+    int header = index * HEADER;
+    int size = headers.get(header + SIZE);
+    if (size == 0) {
+      return getCommittedValue(index);
+    }
+    int offset = headers.get(header + OFFSET);
+    if (time > versions.get(offset + (size - 1) * 2)) {
+      return getVersion(offset + (size - 1) * 2);
+    }
+    int i = search(offset, size, time);
+    // the version committed right before the timestamp, whether or not one was committed at the timestamp
+    i = i >= 0 ? i - 1 : -i - 2;
+    return getVersion(offset + Math.max(i, 0) * 2);
+  }
+
+  @Override
+  public int getCommitTime(int index) {
+    int size = headers.get(index * HEADER + SIZE);
+    return size == 0 ? -1 : versions.get(headers.get(index * HEADER + OFFSET) + (size - 1) * 2);
+  }
+
+  @Override
+  public int getVersionCount(int index) {
+    return Math.max(headers.get(index * HEADER + SIZE), 1);
+  }
+
+  @Override
+  public void forEachValue(LongConsumer action) {
+    for (int index = 0; index <= variableCount; index++) {
+      int flag = flags.get(index);
+      if ((flag >> VALUE_TAG & TAG_MASK) != 0) {
+        action.accept(getValue(index));
+      }
+      if ((flag >> COMMITTED_TAG & TAG_MASK) != 0) {
+        action.accept(getCommittedValue(index));
+      }
+      if (versionTypes != null) {
+        int offset = headers.get(index * HEADER + OFFSET);
+        for (int i = 0; i < headers.get(index * HEADER + SIZE) * 2; i += 2) {
+          if (versionTypes.get((offset + i) >> 1) != 0) {
+            action.accept(getVersion(offset + i));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the value word of the version at given position of the version area.
+   */
+  private long getVersion(int position) {
+    return Value.word(versionTypes == null ? 0 : versionTypes.get(position >> 1), versions.get(position + 1));
+  }
+
+  /**
+   * Puts a version at given position of the version area, creating the area of tags for the first value which is
+   * not an int.
+   */
+  private void putVersion(int position, int time, long value) {
+    int tag = Value.tag(value);
+    if (tag != 0 && versionTypes == null) {
+      versionTypes = ByteBuffer.allocateDirect(versions.capacity() / 2);
+    }
+    versions.put(position, time);
+    versions.put(position + 1, (int) value);
+    if (versionTypes != null) {
+      versionTypes.put(position >> 1, (byte) tag);
+    }
+  }
+
+  /**
+   * Searches the chain at given offset for the version committed at given time, like Arrays.binarySearch.
+   */
+  private int search(int offset, int size, int time) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midTime = versions.get(offset + mid * 2);
+      if (midTime < time) {
+        low = mid + 1;
+      } else if (midTime > time) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * Moves the chain of variable with given number to a new block of given capacity at the end of the version area.
+   */
+  private void allocate(int index, int capacity) {
+    int needed = capacity * 2;
+    if (top + needed > versions.capacity()) {
+      compact(needed);
+    }
+    int header = index * HEADER;
+    int offset = headers.get(header + OFFSET);
+    int size = headers.get(header + SIZE);
+    for (int i = 0; i < size * 2; i += 2) {
+      putVersion(top + i, versions.get(offset + i), getVersion(offset + i));
+    }
+    garbage += headers.get(header + CAPACITY) * 2;
+    headers.put(header + OFFSET, top);
+    headers.put(header + CAPACITY, capacity);
+    top += needed;
+  }
+
+  private void free(int index) {
+    int header = index * HEADER;
+    garbage += headers.get(header + CAPACITY) * 2;
+    headers.put(header + OFFSET, 0);
+    headers.put(header + SIZE, 0);
+    headers.put(header + CAPACITY, 0);
+  }
+
+  /**
+   * Copies every chain into a new version area without the blocks left behind, with room for given number of ints.
+   * The area doubles if it would be more than half full.
+   */
+  private void compact(int needed) {
+    long live = (long) top - garbage + needed;
+    long capacity = live * 2 <= versions.capacity() ? versions.capacity() : live * 2;
+    if (capacity > Integer.MAX_VALUE / Integer.BYTES) {
+      throw new IllegalStateException("version area of " + capacity + " ints is too large.");
+    }
+    IntBuffer area = ints((int) capacity);
+    ByteBuffer types = versionTypes == null ? null : ByteBuffer.allocateDirect((int) capacity / 2);
+    int next = 0;
+    for (int index = 0; index <= variableCount; index++) {
+      int header = index * HEADER;
+      int blockCapacity = headers.get(header + CAPACITY);
+      if (blockCapacity > 0) {
+        int offset = headers.get(header + OFFSET);
+        for (int i = 0; i < headers.get(header + SIZE) * 2; i++) {
+          area.put(next + i, versions.get(offset + i));
+          if (types != null && i % 2 == 0) {
+            types.put((next + i) >> 1, versionTypes.get((offset + i) >> 1));
+          }
+        }
+        headers.put(header + OFFSET, next);
+        next += blockCapacity * 2;
+      }
+    }
+    versions = area;
+    versionTypes = types;
+    top = next;
+    garbage = 0;
+  }
+}
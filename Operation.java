@@ -15,16 +15,16 @@ class Operation {
   }
 
   private final Type type;
-  private final String variableId;
-  private final int value;
+  private final int variableId;
+  private final long value;
 
   /**
    * Inner builder class of Operation
    */
   static final class Builder {
     private final Type type;
-    private String variableId = "";
-    private int value = 0;
+    private int variableId = EventSink.NO_ID;
+    private long value = 0;
 
     /**
      * Creates a Operation object with type. The type of Operation is required.
@@ -40,11 +40,10 @@ class Operation {
     /**
      * Sets the variableId of Operation object, optional.
      *
-     * @param variableId non-null and any string including empty
+     * @param variableId The number of variable
      * @return The variableId
-     * @throws NullPointerException if variableId is null
      */
-    Builder variableId(String variableId) {
+    Builder variableId(int variableId) {
       this.variableId = variableId;
       return this;
     }
@@ -52,11 +51,10 @@ class Operation {
     /**
      * Sets the variableId of Operation object, optional.
      *
-     * @param value The non-null value of Operation
+     * @param value The value word of Operation
      * @return The value.
-     * @throws NullPointerException if value is null
      */
-    Builder value(int value) {
+    Builder value(long value) {
       this.value = value;
       return this;
     }
@@ -92,14 +90,14 @@ class Operation {
   /**
    * Gets the variableId of Operation
    */
-  String getVariableId() {
+  int getVariableId() {
     return variableId;
   }
 
   /**
-   * Gets the value of operation
+   * Gets the value word of operation
    */
-  int getValue() {
+  long getValue() {
     return value;
   }
 }
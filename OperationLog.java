@@ -0,0 +1,193 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * This class compiles an input script into a binary operation log and replays such a log. A log starts with a fixed
+ * header, followed by one fixed-width record per command, the table of interned transaction ids and the table of
+ * interned values which are not ints.
+ * <p>
+ * Each record holds the instruction, the transaction handle, the variable index, the value and the time as 4 byte
+ * integers. Instructions which address a site store the site id in the variable index. The instruction is stored as
+ * the ordinal of {@link Command.Type}, so new instructions must only be added at its end, and the tag of the type of
+ * the value in its high half. The value is the low half of its value word, so a value which is not an int is its
+ * handle in the table of values, where it is stored in the encoding of {@link Value}.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Driver
+ * @see ScriptTokenizer
+ */
+class OperationLog {
+  private static final int MAGIC = 0x52435243;
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 32;
+  private static final int RECORD_SIZE = 20;
+  private static final int RECORDS_PER_WINDOW = (1 << 30) / RECORD_SIZE;
+  private static final Command.Type[] TYPES = Command.Type.values();
+
+  private OperationLog() {
+  }
+
+  /**
+   * Compiles given input script into a binary operation log.
+   *
+   * @param inputFile The name of the input script
+   * @param logFile   The name of the operation log to create
+   * @return The number of compiled commands
+   * @throws IOException              if the script cannot be read or the log cannot be written
+   * @throws IllegalArgumentException if the script contains a malformed command
+   */
+  static long compile(String inputFile, String logFile) throws IOException {
+    SymbolTable transactionIds = new SymbolTable();
+    ValueTable values = new ValueTable();
+    long count = 0;
+    try (FileChannel input = new FileInputStream(Objects.requireNonNull(inputFile,
+            "inputFile must not be null.")).getChannel();
+         FileChannel output = new RandomAccessFile(Objects.requireNonNull(logFile,
+                 "logFile must not be null."), "rw").getChannel()) {
+      output.truncate(0);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 4096).order(ByteOrder.LITTLE_ENDIAN);
+      output.position(HEADER_SIZE);
+      ScriptTokenizer tokenizer = new ScriptTokenizer(input, transactionIds, values);
+      Command command = new Command();
+      while (tokenizer.next(command)) {
+        if (buffer.remaining() < RECORD_SIZE) {
+          drain(buffer, output);
+        }
+        buffer.putInt(command.type.ordinal() | Value.tag(command.value) << 16);
+        buffer.putInt(command.transaction);
+        buffer.putInt(siteAddressed(command.type) ? command.site : command.variable);
+        buffer.putInt((int) command.value);
+        buffer.putInt(command.time);
+        count++;
+      }
+      long symbolOffset = HEADER_SIZE + count * RECORD_SIZE;
+      for (int handle = 0; handle < transactionIds.size(); handle++) {
+        byte[] name = transactionIds.name(handle).getBytes(StandardCharsets.UTF_8);
+        if (buffer.remaining() < 2 + name.length) {
+          drain(buffer, output);
+        }
+        if (buffer.remaining() < 2 + name.length) {
+          throw new IOException("transaction id is too long: " + transactionIds.name(handle));
+        }
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+      }
+      for (int handle = 0; handle < values.size(); handle++) {
+        byte[] value = values.encoded(handle);
+        if (buffer.remaining() < 4 + value.length) {
+          drain(buffer, output);
+        }
+        if (buffer.remaining() < 4 + value.length) {
+          buffer = ByteBuffer.allocateDirect(4 + value.length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.putInt(value.length);
+        buffer.put(value);
+      }
+      drain(buffer, output);
+
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putLong(count);
+      buffer.putLong(symbolOffset);
+      buffer.putInt(transactionIds.size());
+      buffer.putInt(values.size());
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        output.write(buffer, HEADER_SIZE - buffer.remaining());
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Replays every command of given operation log in order. The transaction ids of the log are interned into given
+   * table before the first command is replayed, and each value which is not an int is interned when its command is
+   * replayed, so that the table may be swept in between.
+   *
+   * @param logFile        The name of the operation log
+   * @param transactionIds The empty table to intern the transaction ids into
+   * @param values         The table to intern the values which are not ints into
+   * @param executor       The executor of each replayed command
+   * @throws IOException if the log cannot be read or is not an operation log
+   */
+  static void replay(String logFile, SymbolTable transactionIds, ValueTable values, Consumer<Command> executor)
+          throws IOException {
+    try (FileChannel channel = new RandomAccessFile(Objects.requireNonNull(logFile,
+            "logFile must not be null."), "r").getChannel()) {
+      MappedByteBuffer header = map(channel, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+        throw new IOException(logFile + " is not an operation log.");
+      }
+      long count = header.getLong();
+      long symbolOffset = header.getLong();
+      int symbols = header.getInt();
+      int[] offsets = new int[header.getInt()];
+
+      MappedByteBuffer table = map(channel, symbolOffset, channel.size() - symbolOffset);
+      byte[] name = new byte[Short.MAX_VALUE];
+      for (int i = 0; i < symbols; i++) {
+        int length = table.getShort();
+        table.get(name, 0, length);
+        transactionIds.intern(name, 0, length);
+      }
+      byte[] encoded = new byte[64];
+      int end = 0;
+      for (int i = 0; i < offsets.length; i++) {
+        int length = table.getInt();
+        if (end + length > encoded.length) {
+          encoded = Arrays.copyOf(encoded, Math.max(end + length, encoded.length * 2));
+        }
+        table.get(encoded, end, length);
+        offsets[i] = end;
+        end += length;
+      }
+
+      Command command = new Command();
+      for (long first = 0; first < count; first += RECORDS_PER_WINDOW) {
+        int records = (int) Math.min(RECORDS_PER_WINDOW, count - first);
+        MappedByteBuffer window = map(channel, HEADER_SIZE + first * RECORD_SIZE, (long) records * RECORD_SIZE);
+        for (int i = 0; i < records; i++) {
+          int instruction = window.getInt();
+          command.type = TYPES[instruction & 0xFFFF];
+          command.transaction = window.getInt();
+          int argument = window.getInt();
+          if (siteAddressed(command.type)) {
+            command.site = argument;
+          } else {
+            command.variable = argument;
+          }
+          int value = window.getInt();
+          command.value = instruction >>> 16 == 0 ? value : values.intern(encoded, offsets[value]);
+          command.time = window.getInt();
+          executor.accept(command);
+        }
+      }
+    }
+  }
+
+  private static boolean siteAddressed(Command.Type type) {
+    return type == Command.Type.FAIL || type == Command.Type.RECOVER || type == Command.Type.DUMP_SITE;
+  }
+
+  private static MappedByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    return buffer;
+  }
+
+  private static void drain(ByteBuffer buffer, FileChannel output) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      output.write(buffer);
+    }
+    buffer.clear();
+  }
+}
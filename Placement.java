@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * This interface places each variable which is not replicated at its only site, called the home site of the
+ * variable. SiteManager asks the placement once per variable when it creates the sites.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see SiteManager
+ */
+interface Placement {
+  /**
+   * Enum kinds of placement: site (1 + i % number of sites), a consistent hash ring, or contiguous ranges of
+   * variables of equal size
+   */
+  enum Kind {
+    MODULO, HASH, RANGE;
+
+    /**
+     * Gets the kind with given name, ignoring case.
+     *
+     * @param name The name of kind
+     * @return The kind
+     * @throws IllegalArgumentException if there is no kind with given name
+     */
+    static Kind parse(String name) {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+  }
+
+  /**
+   * Gets the id of the home site of variable with given number.
+   *
+   * @param index The number of variable
+   * @return The id of site, from 1 to the number of sites
+   */
+  int getHomeSiteId(int index);
+
+  /**
+   * Creates the placement of given kind.
+   *
+   * @param kind         The kind of placement
+   * @param sites        The number of sites
+   * @param variables    The number of variables
+   * @param virtualNodes The number of points of each site on the hash ring, only used by HASH
+   * @return The placement
+   * @throws NullPointerException     if kind is null
+   * @throws IllegalArgumentException if sites, variables or virtualNodes is not positive
+   */
+  static Placement create(Kind kind, int sites, int variables, int virtualNodes) {
+    if (sites < 1 || variables < 1 || virtualNodes < 1) {
+      throw new IllegalArgumentException("sites, variables and virtualNodes must be positive.");
+    }
+    switch (kind) {
+      case HASH:
+        return new ConsistentHash(sites, virtualNodes);
+      case RANGE:
+        return Range.even(sites, variables);
+      default:
+        return new Modulo(sites);
+    }
+  }
+
+  /**
+   * Places variable i at site (1 + i % number of sites).
+   */
+  final class Modulo implements Placement {
+    private final int sites;
+
+    Modulo(int sites) {
+      this.sites = sites;
+    }
+
+    @Override
+    public int getHomeSiteId(int index) {
+      return 1 + index % sites;
+    }
+  }
+
+  /**
+   * Places each variable at the site owning the first point on a hash ring at or after the hash of the variable.
+   * Every site owns the given number of points, so that the variables spread evenly even if the hot ones are
+   * adjacent, and adding a site to n sites only moves about 1 / (n + 1) of the variables, all to the new site.
+   */
+  final class ConsistentHash implements Placement {
+    private final int[] points;
+    private final int[] owners;
+
+    ConsistentHash(int sites, int virtualNodes) {
+      long[] ring = new long[sites * virtualNodes];
+      for (int siteId = 1, i = 0; siteId <= sites; siteId++) {
+        for (int node = 0; node < virtualNodes; node++, i++) {
+          int point = hash(siteId * 0x10001 + node * 0x9E3779B9);
+          // sort by point, ties broken by site id
+          ring[i] = ((long) point << 32) | siteId;
+        }
+      }
+      Arrays.sort(ring);
+      points = new int[ring.length];
+      owners = new int[ring.length];
+      for (int i = 0; i < ring.length; i++) {
+        points[i] = (int) (ring[i] >> 32);
+        owners[i] = (int) ring[i];
+      }
+    }
+
+    @Override
+    public int getHomeSiteId(int index) {
+      int i = Arrays.binarySearch(points, hash(index));
+      if (i < 0) {
+        i = -i - 1;
+      } else {
+        while (i > 0 && points[i - 1] == points[i]) {
+          i--;
+        }
+      }
+      return owners[i == points.length ? 0 : i];
+    }
+
+    /**
+     * Mixes the bits of given key, e.g. the finalizer of MurmurHash3.
+     */
+    private static int hash(int key) {
+      key ^= key >>> 16;
+      key *= 0x85EBCA6B;
+      key ^= key >>> 13;
+      key *= 0xC2B2AE35;
+      key ^= key >>> 16;
+      return key;
+    }
+  }
+
+  /**
+   * Places contiguous ranges of variables at the sites in order. Site s holds the variables from the bound of site
+   * s - 1, exclusive, to the bound of site s, inclusive.
+   */
+  final class Range implements Placement {
+    private final int[] bounds;
+
+    /**
+     * Constructor for ranges with given upper bounds.
+     *
+     * @param bounds The largest number of variable of each site in order of site id, ascending
+     * @throws IllegalArgumentException if bounds are empty or not ascending
+     */
+    Range(int[] bounds) {
+      if (bounds.length == 0) {
+        throw new IllegalArgumentException("bounds must not be empty.");
+      }
+      for (int i = 1; i < bounds.length; i++) {
+        if (bounds[i] < bounds[i - 1]) {
+          throw new IllegalArgumentException("bounds must be ascending: " + Arrays.toString(bounds));
+        }
+      }
+      this.bounds = bounds.clone();
+    }
+
+    /**
+     * Creates ranges of equal size.
+     *
+     * @param sites     The number of sites
+     * @param variables The number of variables
+     * @return The placement
+     */
+    static Range even(int sites, int variables) {
+      int[] bounds = new int[sites];
+      for (int i = 0; i < sites; i++) {
+        bounds[i] = (int) ((long) variables * (i + 1) / sites);
+      }
+      return new Range(bounds);
+    }
+
+    @Override
+    public int getHomeSiteId(int index) {
+      int i = Arrays.binarySearch(bounds, index);
+      if (i < 0) {
+        i = -i - 1;
+      } else {
+        while (i > 0 && bounds[i - 1] == bounds[i]) {
+          i--;
+        }
+      }
+      // variables beyond the last bound belong to the last site
+      return Math.min(i, bounds.length - 1) + 1;
+    }
+  }
+}
@@ -0,0 +1,121 @@
+import java.util.Objects;
+
+/**
+ * This class spreads the load of the variables which are not replicated across the sites. It sums the access counts
+ * of the copies at each site since the last run, and while the busiest site is loaded more than the tolerance above
+ * the average, it moves the busiest variable of that site which narrows the gap to the least loaded site.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see SiteManager#migrate(int, int)
+ */
+class Rebalancer {
+  private final SiteManager siteManager;
+  private final double tolerance;
+  private final int maxMoves;
+  private long moves;
+
+  /**
+   * Constructor for rebalancer of given site manager.
+   *
+   * @param siteManager The site manager whose variables are moved
+   * @param tolerance   The load above the average which is tolerated, e.g. 0.2 for 20%
+   * @param maxMoves    The largest number of variables moved by one run
+   * @throws NullPointerException     if siteManager is null
+   * @throws IllegalArgumentException if tolerance or maxMoves is negative
+   */
+  Rebalancer(SiteManager siteManager, double tolerance, int maxMoves) {
+    if (tolerance < 0 || maxMoves < 0) {
+      throw new IllegalArgumentException("tolerance and maxMoves must not be negative.");
+    }
+    this.siteManager = Objects.requireNonNull(siteManager, "siteManager must not be null.");
+    this.tolerance = tolerance;
+    this.maxMoves = maxMoves;
+  }
+
+  /**
+   * Moves variables from the busiest to the least loaded sites which are up, then clears the access counts of every
+   * site.
+   *
+   * @return The number of variables moved
+   */
+  int rebalance() {
+    int sites = siteManager.getSiteCount();
+    long[] loads = new long[sites + 1];
+    long total = 0;
+    int up = 0;
+    for (int siteId = 1; siteId <= sites; siteId++) {
+      if (siteManager.isUp(siteId)) {
+        loads[siteId] = load(siteManager.getSite(siteId));
+        total += loads[siteId];
+        up++;
+      }
+    }
+
+    int moved = 0;
+    while (up > 1 && moved < maxMoves) {
+      int busiest = 0;
+      int idlest = 0;
+      for (int siteId = 1; siteId <= sites; siteId++) {
+        if (siteManager.isUp(siteId)) {
+          if (busiest == 0 || loads[siteId] > loads[busiest]) {
+            busiest = siteId;
+          }
+          if (idlest == 0 || loads[siteId] < loads[idlest]) {
+            idlest = siteId;
+          }
+        }
+      }
+      if (loads[busiest] <= (1 + tolerance) * total / up) {
+        break;
+      }
+
+      // the busiest variable moving less than the gap, so that the busiest site stays busier than the idlest
+      Site site = siteManager.getSite(busiest);
+      long gap = loads[busiest] - loads[idlest];
+      int candidate = -1;
+      for (int index = site.nextVariable(1); index >= 0; index = site.nextVariable(index + 1)) {
+        int count = site.getAccessCount(index);
+        if (!siteManager.isReplicated(index) && !site.hasLocks(index) && count > 0 && count < gap
+                && (candidate < 0 || count > site.getAccessCount(candidate))) {
+          candidate = index;
+        }
+      }
+      if (candidate < 0) {
+        break;
+      }
+      int count = site.getAccessCount(candidate);
+      if (!siteManager.migrate(candidate, idlest)) {
+        break;
+      }
+      loads[busiest] -= count;
+      loads[idlest] += count;
+      moved++;
+    }
+
+    for (Site site : siteManager.getSites()) {
+      site.clearAccessCounts();
+    }
+    moves += moved;
+    return moved;
+  }
+
+  /**
+   * Gets the number of variables moved by every run so far.
+   *
+   * @return The number of variables moved
+   */
+  long getMoves() {
+    return moves;
+  }
+
+  private long load(Site site) {
+    long load = 0;
+    for (int index = site.nextVariable(1); index >= 0; index = site.nextVariable(index + 1)) {
+      if (!siteManager.isReplicated(index)) {
+        load += site.getAccessCount(index);
+      }
+    }
+    return load;
+  }
+}
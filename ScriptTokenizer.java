@@ -0,0 +1,462 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * This class decodes an input script into commands. It reads the script from a channel into a reusable buffer and
+ * decodes instructions, transaction ids, variable ids and values straight into the primitive fields of a command,
+ * so that no String is created per token.
+ * <p>
+ * The value of a write is an int, a long with suffix L, e.g. 5000000000L, a double with a decimal point or exponent,
+ * e.g. 2.5, a string in double quotes, where \" and \\ escape a quote and a backslash, or a blob as 0x followed by
+ * an even number of hex digits. Values which are not ints are encoded and interned into a value table.
+ * <p>
+ * Lines starting with "//" and empty lines are skipped, a line starting with "=" terminates the script and commands
+ * separated by ";" on one line share the same time.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Command
+ * @see Driver
+ */
+class ScriptTokenizer {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final ReadableByteChannel channel;
+  private final SymbolTable transactionIds;
+  private final ValueTable values;
+  private byte[] encoded = new byte[16];
+  private byte[] data;
+  private int limit;
+  private int position;
+  private int lineStart;
+  private int lineEnd;
+  private int nextLine;
+  private boolean inLine;
+  private boolean endOfInput;
+  private boolean terminated;
+  private int time;
+
+  /**
+   * Constructor for tokenizer reading from given channel.
+   *
+   * @param channel        The channel of the input script
+   * @param transactionIds The table interning the transaction ids
+   * @param values         The table interning the values which are not ints
+   * @throws NullPointerException if channel, transactionIds or values is null
+   */
+  ScriptTokenizer(ReadableByteChannel channel, SymbolTable transactionIds, ValueTable values) {
+    this.channel = Objects.requireNonNull(channel, "channel must not be null.");
+    this.transactionIds = Objects.requireNonNull(transactionIds, "transactionIds must not be null.");
+    this.values = Objects.requireNonNull(values, "values must not be null.");
+    this.data = new byte[BUFFER_SIZE];
+  }
+
+  /**
+   * Constructor for tokenizer decoding single lines handed to {@link #line(byte[], int, int)}, e.g. received from a
+   * network connection.
+   *
+   * @param transactionIds The table interning the transaction ids
+   * @param values         The table interning the values which are not ints
+   * @throws NullPointerException if transactionIds or values is null
+   */
+  ScriptTokenizer(SymbolTable transactionIds, ValueTable values) {
+    this.channel = null;
+    this.transactionIds = Objects.requireNonNull(transactionIds, "transactionIds must not be null.");
+    this.values = Objects.requireNonNull(values, "values must not be null.");
+    this.endOfInput = true;
+  }
+
+  /**
+   * Starts decoding given line. The commands of the line are then decoded by {@link #next(Command)}, which returns
+   * false once the line is done. Only for a tokenizer without channel.
+   *
+   * @param buffer The buffer holding the line
+   * @param from   The index of the first byte of the line
+   * @param to     The index after the last byte of the line, excluding the line separator
+   * @return true if the line holds commands, false if it is empty, a comment or the terminator
+   * @throws IllegalStateException if the tokenizer reads from a channel
+   */
+  boolean line(byte[] buffer, int from, int to) {
+    if (channel != null) {
+      throw new IllegalStateException("tokenizer reads from a channel.");
+    }
+    data = Objects.requireNonNull(buffer, "buffer must not be null.");
+    position = from;
+    lineStart = from;
+    lineEnd = to;
+    limit = to;
+    nextLine = to;
+    if (lineEnd > position && data[lineEnd - 1] == '\r') {
+      lineEnd--;
+    }
+    skipSpaces();
+    inLine = position < lineEnd && !startsWithComment() && data[position] != '=';
+    if (inLine) {
+      time++;
+    }
+    return inLine;
+  }
+
+  /**
+   * Decodes the next command of the script.
+   *
+   * @param command The command to fill
+   * @return true if a command was decoded, false at the end of the script
+   * @throws IOException              if the script cannot be read
+   * @throws IllegalArgumentException if the command is malformed
+   */
+  boolean next(Command command) throws IOException {
+    while (!terminated) {
+      if (inLine) {
+        skipSpaces();
+        while (position < lineEnd && data[position] == ';') {
+          position++;
+          skipSpaces();
+        }
+        if (position < lineEnd) {
+          command.time = time;
+          parseCommand(command);
+          return true;
+        }
+        inLine = false;
+      }
+      if (!readLine()) {
+        return false;
+      }
+      skipSpaces();
+      if (position == lineEnd || startsWithComment()) {
+        continue;
+      }
+      if (data[position] == '=') {
+        terminated = true;
+        return false;
+      }
+      time++;
+      inLine = true;
+    }
+    return false;
+  }
+
+  /**
+   * Gets the time of the last decoded command.
+   *
+   * @return The time of the last command
+   */
+  int getTime() {
+    return time;
+  }
+
+  private boolean readLine() throws IOException {
+    if (channel == null) {
+      return false;
+    }
+    position = nextLine;
+    int scan = position;
+    while (true) {
+      while (scan < limit && data[scan] != '\n') {
+        scan++;
+      }
+      if (scan < limit) {
+        nextLine = scan + 1;
+        break;
+      }
+      if (endOfInput) {
+        if (position == limit) {
+          return false;
+        }
+        nextLine = limit;
+        break;
+      }
+      scan -= position;
+      fill();
+    }
+    lineStart = position;
+    lineEnd = scan;
+    if (lineEnd > position && data[lineEnd - 1] == '\r') {
+      lineEnd--;
+    }
+    return true;
+  }
+
+  private void fill() throws IOException {
+    int remaining = limit - position;
+    if (remaining == data.length) {
+      byte[] grown = new byte[data.length * 2];
+      System.arraycopy(data, position, grown, 0, remaining);
+      data = grown;
+    } else {
+      System.arraycopy(data, position, data, 0, remaining);
+    }
+    position = 0;
+    limit = remaining;
+    ByteBuffer buffer = ByteBuffer.wrap(data, limit, data.length - limit);
+    int read = channel.read(buffer);
+    if (read < 0) {
+      endOfInput = true;
+    } else {
+      limit += read;
+    }
+  }
+
+  private boolean startsWithComment() {
+    return position + 1 < lineEnd && data[position] == '/' && data[position + 1] == '/';
+  }
+
+  private void parseCommand(Command command) {
+    int nameStart = position;
+    while (position < lineEnd && data[position] != '(' && !isSpace(data[position])) {
+      position++;
+    }
+    int nameEnd = position;
+    skipSpaces();
+    expect('(');
+    command.type = instruction(nameStart, nameEnd);
+    switch (command.type) {
+      case BEGIN:
+      case BEGIN_RO:
+      case END:
+        command.transaction = transactionId();
+        break;
+
+      case FAIL:
+      case RECOVER:
+        command.site = integer();
+        break;
+
+      case WRITE:
+        command.transaction = transactionId();
+        expect(',');
+        command.variable = variableId();
+        expect(',');
+        command.value = value();
+        break;
+
+      case READ:
+        command.transaction = transactionId();
+        expect(',');
+        command.variable = variableId();
+        break;
+
+      case DUMP:
+        skipSpaces();
+        if (position < lineEnd && data[position] != ')') {
+          if (data[position] == 'x' || data[position] == 'X') {
+            command.type = Command.Type.DUMP_VARIABLE;
+            command.variable = variableId();
+          } else {
+            command.type = Command.Type.DUMP_SITE;
+            command.site = integer();
+          }
+        }
+        break;
+
+      default:
+        while (position < lineEnd && data[position] != ')') {
+          position++;
+        }
+    }
+    expect(')');
+    while (position < lineEnd && data[position] != ';') {
+      position++;
+    }
+  }
+
+  private Command.Type instruction(int from, int to) {
+    switch (to - from) {
+      case 1:
+        if (matches(from, "w")) return Command.Type.WRITE;
+        if (matches(from, "r")) return Command.Type.READ;
+        break;
+      case 3:
+        if (matches(from, "end")) return Command.Type.END;
+        break;
+      case 4:
+        if (matches(from, "fail")) return Command.Type.FAIL;
+        if (matches(from, "dump")) return Command.Type.DUMP;
+        break;
+      case 5:
+        if (matches(from, "begin")) return Command.Type.BEGIN;
+        break;
+      case 7:
+        if (matches(from, "beginro")) return Command.Type.BEGIN_RO;
+        if (matches(from, "recover")) return Command.Type.RECOVER;
+        break;
+      default:
+    }
+    return Command.Type.INVALID;
+  }
+
+  private boolean matches(int from, String lowerCaseName) {
+    for (int i = 0; i < lowerCaseName.length(); i++) {
+      if ((data[from + i] | 0x20) != lowerCaseName.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int transactionId() {
+    skipSpaces();
+    int start = position;
+    while (position < lineEnd && data[position] != ',' && data[position] != ')' && !isSpace(data[position])) {
+      position++;
+    }
+    return transactionIds.intern(data, start, position);
+  }
+
+  private int variableId() {
+    skipSpaces();
+    if (position < lineEnd && (data[position] == 'x' || data[position] == 'X')) {
+      position++;
+    }
+    return integer();
+  }
+
+  private int integer() {
+    skipSpaces();
+    int start = position;
+    boolean negative = position < lineEnd && data[position] == '-';
+    if (negative) {
+      position++;
+    }
+    long value = 0;
+    int digits = 0;
+    while (position < lineEnd && data[position] >= '0' && data[position] <= '9') {
+      value = value * 10 + (data[position++] - '0');
+      if (value > (long) Integer.MAX_VALUE + 1) {
+        throw invalidNumber(start);
+      }
+      digits++;
+    }
+    if (negative) {
+      value = -value;
+    }
+    if (digits == 0 || value > Integer.MAX_VALUE) {
+      throw invalidNumber(start);
+    }
+    skipSpaces();
+    return (int) value;
+  }
+
+  private long value() {
+    skipSpaces();
+    if (position < lineEnd && data[position] == '"') {
+      return string();
+    }
+    if (position + 1 < lineEnd && data[position] == '0' && (data[position + 1] | 0x20) == 'x') {
+      return blob();
+    }
+    int start = position;
+    int end = position;
+    boolean decimal = false;
+    while (end < lineEnd && (data[end] >= '0' && data[end] <= '9' || data[end] == '-' || data[end] == '+'
+            || data[end] == '.' || (data[end] | 0x20) == 'e')) {
+      decimal |= data[end] == '.' || (data[end] | 0x20) == 'e';
+      end++;
+    }
+    boolean isLong = !decimal && end < lineEnd && (data[end] | 0x20) == 'l';
+    if (!decimal && !isLong) {
+      return integer();
+    }
+    String number = new String(data, start, end - start, StandardCharsets.US_ASCII);
+    try {
+      if (decimal) {
+        Value.encodeDouble(Double.parseDouble(number), encoded, 0);
+      } else {
+        Value.encodeLong(Long.parseLong(number), encoded, 0);
+      }
+    } catch (NumberFormatException e) {
+      throw invalidNumber(start);
+    }
+    position = isLong ? end + 1 : end;
+    skipSpaces();
+    return values.intern(encoded, 0);
+  }
+
+  private long string() {
+    int start = ++position;
+    int length = 0;
+    while (position < lineEnd && data[position] != '"') {
+      if (data[position] == '\\' && position + 1 < lineEnd) {
+        position++;
+      }
+      position++;
+      length++;
+    }
+    if (position == lineEnd) {
+      throw new IllegalArgumentException("unterminated string at time " + time + ": "
+              + new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+    }
+    int at = header(Value.Type.STRING, length);
+    for (int i = start; i < position; i++) {
+      if (data[i] == '\\') {
+        i++;
+      }
+      encoded[at++] = data[i];
+    }
+    position++;
+    skipSpaces();
+    return values.intern(encoded, 0);
+  }
+
+  private long blob() {
+    int start = position;
+    position += 2;
+    while (position < lineEnd && Character.digit(data[position], 16) >= 0) {
+      position++;
+    }
+    int digits = position - start - 2;
+    if (digits == 0 || digits % 2 != 0) {
+      throw invalidNumber(start);
+    }
+    int at = header(Value.Type.BLOB, digits / 2);
+    for (int i = start + 2; i < position; i += 2) {
+      encoded[at++] = (byte) (Character.digit(data[i], 16) << 4 | Character.digit(data[i + 1], 16));
+    }
+    skipSpaces();
+    return values.intern(encoded, 0);
+  }
+
+  /**
+   * Encodes the header of a string or blob of given length, making room for its bytes.
+   *
+   * @return The index of the first byte
+   */
+  private int header(Value.Type type, int length) {
+    if (length + 6 > encoded.length) {
+      encoded = new byte[Math.max(length + 6, encoded.length * 2)];
+    }
+    return Value.encodeBytesHeader(type, length, encoded, 0);
+  }
+
+  private void expect(char expected) {
+    skipSpaces();
+    if (position >= lineEnd || data[position] != expected) {
+      throw new IllegalArgumentException("expected '" + expected + "' at time " + time + ": "
+              + new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+    }
+    position++;
+  }
+
+  private NumberFormatException invalidNumber(int start) {
+    int end = start;
+    while (end < lineEnd && data[end] != ',' && data[end] != ')') {
+      end++;
+    }
+    return new NumberFormatException("For input string: \""
+            + new String(data, start, end - start, StandardCharsets.UTF_8).trim() + "\"");
+  }
+
+  private void skipSpaces() {
+    while (position < lineEnd && isSpace(data[position])) {
+      position++;
+    }
+  }
+
+  private static boolean isSpace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+}
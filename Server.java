@@ -0,0 +1,418 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * This class runs RepCRec as a local service. Clients connect over TCP and send the commands of the input file
+ * grammar, one line per request. A single selector thread accepts every connection and executes the lines of all
+ * connections in the order they arrive, each line at its own time as if it was the next line of one input file.
+ * <p>
+ * The output of a request is sent back as the text lines printed by RepCRec, followed by an empty line. Events of a
+ * transaction, e.g. a waiting read that was resumed by another client, are sent to the connection which began it.
+ * Clients may pipeline requests without waiting for their responses. Once more than {@link #OUTPUT_LIMIT} bytes of
+ * output are pending for a client, the server stops reading and executing its requests until that output was sent.
+ * A client which sends a line longer than {@link #MAX_LINE_LENGTH} bytes is disconnected.
+ * <p>
+ * A transaction belongs to the connection which began it until it ends, and requests of other connections naming it
+ * are rejected. The transactions of a client which disconnects are aborted, so that their locks are released.
+ * <p>
+ * Run as {@code java Server [port] [key=value ...]} with the keys of {@link SiteManager.Config}, e.g.
+ * {@code java Server 7311 sites=20 placement=hash}.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Driver
+ * @see LoadClient
+ */
+class Server {
+  static final int DEFAULT_PORT = 7311;
+  static final int OUTPUT_LIMIT = 1 << 20;
+  static final int MAX_LINE_LENGTH = 1 << 20;
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final byte[] TERMINATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  private final Selector selector;
+  private final ServerSocketChannel serverChannel;
+  private final SymbolTable transactionIds = new SymbolTable();
+  private final ValueTable values = new ValueTable();
+  private final Router router = new Router();
+  private final Driver driver;
+  private final List<Connection> dirty = new ArrayList<>();
+
+  /**
+   * Constructor for server of 10 sites and 20 variables listening on given port of the loopback address.
+   *
+   * @param port The port to listen on, 0 for any free port
+   * @throws IOException if the port cannot be bound
+   */
+  Server(int port) throws IOException {
+    this(port, new SiteManager.Config());
+  }
+
+  /**
+   * Constructor for server listening on given port of the loopback address.
+   *
+   * @param port   The port to listen on, 0 for any free port
+   * @param config The number of sites, variables and the replication policy
+   * @throws IOException              if the port cannot be bound
+   * @throws IllegalArgumentException if config is out of range
+   */
+  Server(int port, SiteManager.Config config) throws IOException {
+    driver = new Driver(transactionIds, values, config, router);
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  public static void main(String[] args) {
+    try {
+      SiteManager.Config config = new SiteManager.Config();
+      int port = DEFAULT_PORT;
+      for (String arg : args) {
+        int split = arg.indexOf('=');
+        if (split < 0) {
+          port = Integer.parseInt(arg);
+        } else if (!config.set(arg.substring(0, split), arg.substring(split + 1))) {
+          throw new IllegalArgumentException("unknown key: " + arg.substring(0, split));
+        }
+      }
+      Server server = new Server(port, config);
+      System.out.println(">>>> Listening on " + server.getAddress());
+      server.serve();
+    } catch (Exception e) {
+      System.out.println("Error: " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Gets the address the server listens on.
+   *
+   * @return The local address
+   * @throws IOException if the address cannot be read
+   */
+  InetSocketAddress getAddress() throws IOException {
+    return (InetSocketAddress) serverChannel.getLocalAddress();
+  }
+
+  /**
+   * Serves every connection until the thread is interrupted or the server is closed.
+   *
+   * @throws IOException if the selector fails
+   */
+  void serve() throws IOException {
+    while (!Thread.currentThread().isInterrupted() && selector.isOpen()) {
+      selector.select();
+      Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = keys.next();
+        keys.remove();
+        try {
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+          }
+          if (key.isValid() && key.isReadable()) {
+            ((Connection) key.attachment()).read();
+          }
+          if (key.isValid() && key.isWritable()) {
+            ((Connection) key.attachment()).write();
+          }
+        } catch (IOException e) {
+          if (key.attachment() instanceof Connection) {
+            ((Connection) key.attachment()).close();
+          }
+        }
+      }
+      // a connection which resumes executing its requests while being written is added again
+      for (int i = 0; i < dirty.size(); i++) {
+        Connection connection = dirty.get(i);
+        connection.renderer.flush();
+        connection.write();
+      }
+      dirty.clear();
+    }
+  }
+
+  /**
+   * Stops serving and closes every connection.
+   *
+   * @throws IOException if the server channel cannot be closed
+   */
+  void close() throws IOException {
+    for (SelectionKey key : selector.keys()) {
+      key.channel().close();
+    }
+    selector.close();
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    Connection connection = new Connection(channel);
+    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+  }
+
+  /**
+   * One client connection with its pending input and output.
+   */
+  private final class Connection extends OutputStream {
+    private final SocketChannel channel;
+    private final TextEventRenderer renderer = new TextEventRenderer(this, transactionIds, values);
+    private SelectionKey key;
+    private ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] out = new byte[BUFFER_SIZE];
+    private int outStart;
+    private int outEnd;
+    private boolean isDirty;
+    private boolean isPaused;
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Reads what the client sent and executes every complete line of it.
+     */
+    void read() throws IOException {
+      if (!in.hasRemaining()) {
+        if (in.capacity() >= MAX_LINE_LENGTH) {
+          // the buffer holds one incomplete line, as every complete line was executed
+          renderer.message("Error: line longer than " + MAX_LINE_LENGTH + " bytes.");
+          renderer.flush();
+          write();
+          close();
+          return;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(in.capacity() * 2);
+        in.flip();
+        grown.put(in);
+        in = grown;
+      }
+      int read = channel.read(in);
+      if (read < 0) {
+        close();
+        return;
+      }
+      executeLines();
+    }
+
+    /**
+     * Executes the complete lines read so far, until the pending output exceeds the limit. The remaining lines are
+     * kept and reading is paused until the output was sent.
+     */
+    private void executeLines() {
+      byte[] data = in.array();
+      int start = 0;
+      for (int i = 0; i < in.position() && outEnd - outStart <= OUTPUT_LIMIT; i++) {
+        if (data[i] == '\n') {
+          execute(data, start, i);
+          start = i + 1;
+        }
+      }
+      in.flip();
+      in.position(start);
+      in.compact();
+      if (outEnd - outStart > OUTPUT_LIMIT) {
+        isPaused = true;
+        markDirty();
+      }
+    }
+
+    private void execute(byte[] data, int from, int to) {
+      router.current = this;
+      try {
+        driver.executeLine(data, from, to, this::check);
+      } catch (RuntimeException e) {
+        renderer.message("Error: " + e.getMessage());
+      }
+      renderer.flush();
+      write(TERMINATOR, 0, TERMINATOR.length);
+      markDirty();
+      router.current = null;
+    }
+
+    /**
+     * Rejects a command naming a transaction which another connection began, or which was never begun.
+     */
+    private void check(Command command) {
+      switch (command.type) {
+        case BEGIN:
+        case BEGIN_RO:
+        case READ:
+        case WRITE:
+        case END:
+          break;
+        default:
+          return;
+      }
+      Connection owner = router.owner(command.transaction);
+      if (owner != null && owner != this) {
+        throw new IllegalArgumentException("transaction " + transactionIds.name(command.transaction)
+                + " belongs to another session.");
+      }
+      if (owner == null && command.type != Command.Type.BEGIN && command.type != Command.Type.BEGIN_RO
+              && !driver.hasBegun(command.transaction)) {
+        throw new IllegalArgumentException("transaction " + transactionIds.name(command.transaction)
+                + " has not begun.");
+      }
+    }
+
+    void markDirty() {
+      if (!isDirty) {
+        isDirty = true;
+        dirty.add(this);
+      }
+    }
+
+    /**
+     * Sends as much pending output as the socket accepts. Once all of it was sent, a paused connection executes the
+     * lines it kept and reads again.
+     */
+    void write() {
+      isDirty = false;
+      if (!channel.isOpen()) {
+        return;
+      }
+      try {
+        if (outEnd > outStart) {
+          outStart += channel.write(ByteBuffer.wrap(out, outStart, outEnd - outStart));
+        }
+        if (outStart == outEnd) {
+          outStart = 0;
+          outEnd = 0;
+          if (isPaused) {
+            isPaused = false;
+            executeLines();
+          }
+        }
+        if (!channel.isOpen()) {
+          return;
+        }
+        key.interestOps((isPaused ? 0 : SelectionKey.OP_READ) | (outEnd > outStart ? SelectionKey.OP_WRITE : 0));
+      } catch (IOException e) {
+        close();
+      }
+    }
+
+    @Override
+    public void write(int b) {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      if (outEnd + len > out.length) {
+        if (outStart > 0) {
+          System.arraycopy(out, outStart, out, 0, outEnd - outStart);
+          outEnd -= outStart;
+          outStart = 0;
+        }
+        if (outEnd + len > out.length) {
+          out = Arrays.copyOf(out, Math.max(out.length * 2, outEnd + len));
+        }
+      }
+      System.arraycopy(b, off, out, outEnd, len);
+      outEnd += len;
+    }
+
+    @Override
+    public void close() {
+      if (!channel.isOpen()) {
+        return;
+      }
+      if (key != null) {
+        key.cancel();
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // the connection is gone either way
+      }
+      router.disconnect(this);
+    }
+  }
+
+  /**
+   * Sends each event to the connection which began its transaction, or else to the connection whose request is
+   * running.
+   */
+  private final class Router implements EventSink {
+    private Connection[] owners = new Connection[64];
+    private Connection current;
+
+    @Override
+    public void accept(Event event, int transactionId, int variableId, long value, int siteId) {
+      Connection target = current;
+      if (transactionId != NO_ID) {
+        if (transactionId >= owners.length) {
+          owners = Arrays.copyOf(owners, Math.max(transactionId + 1, owners.length * 2));
+        }
+        if (event == Event.BEGIN || event == Event.BEGIN_READ_ONLY) {
+          owners[transactionId] = current;
+        }
+        Connection owner = owners[transactionId];
+        if (event == Event.COMMIT || event == Event.ABORT || event == Event.ALREADY_ABORTED) {
+          owners[transactionId] = null;
+        }
+        if (owner != null) {
+          target = owner;
+        }
+      }
+      if (target != null && target.channel.isOpen()) {
+        target.renderer.accept(event, transactionId, variableId, value, siteId);
+        target.markDirty();
+      }
+    }
+
+    @Override
+    public void message(String text) {
+      if (current != null && current.channel.isOpen()) {
+        current.renderer.message(text);
+        current.markDirty();
+      }
+    }
+
+    /**
+     * Gets the connection which began the transaction with given handle, while it has not ended.
+     *
+     * @param transactionId The handle of transaction
+     * @return The connection, or null if the transaction is not running
+     */
+    Connection owner(int transactionId) {
+      return transactionId >= 0 && transactionId < owners.length ? owners[transactionId] : null;
+    }
+
+    /**
+     * Aborts every transaction which given connection began and which has not ended yet.
+     *
+     * @param connection The closed connection
+     */
+    void disconnect(Connection connection) {
+      BitSet owned = new BitSet();
+      for (int i = 0; i < owners.length; i++) {
+        if (owners[i] == connection) {
+          owned.set(i);
+          owners[i] = null;
+        }
+      }
+      for (int id = owned.nextSetBit(0); id >= 0; id = owned.nextSetBit(id + 1)) {
+        driver.abort(id);
+      }
+    }
+  }
+}
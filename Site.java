@@ -1,8 +1,13 @@
 import java.util.*;
+import java.util.function.LongConsumer;
 
 /**
  * This class represents the site where data information is being stored. It contains site id, lock table, variable
  * list, and the las failed time.
+ * <p>
+ * The data of the copies is kept by a store indexed by the number of variable, on the heap or in direct buffers
+ * outside it, so that a site costs a few bytes per variable it hosts. The versions of a copy are only kept once it
+ * was committed after the start.
  *
  * @author Hyung Jin Cho
  * @version 12/07/2018
@@ -18,21 +23,50 @@ class Site {
 
   private Status status;
   private final int siteId;
-  private final Map<String, List<Lock>> lockTable;
-  private final Map<String, Variable> variableMap;
+  private final LockTable locks;
+  private final BitSet hosted;
+  private final BitSet replicated;
+  private final SiteStore store;
+  private final int[] accessCounts;
   private int lastFailedTime;
+  private long readCount;
+  private long reclaimedVersions;
 
   /**
-   * Site constructor with given site id. Sets site status as UP and creates lock tables map and variableMap map.
+   * Site constructor with given site id. Sets site status as UP and creates lock tables map and the storage on the
+   * heap for given number of variables.
    *
-   * @param siteId The id of Site object
+   * @param siteId        The id of Site object
+   * @param variableCount The number of variables in the database
    * @return This site
+   * @throws IllegalArgumentException if variableCount is negative
    */
-  Site(int siteId) {
+  Site(int siteId, int variableCount) {
+    this(siteId, variableCount, SiteStore.Kind.HEAP);
+  }
+
+  /**
+   * Site constructor with given site id. Sets site status as UP and creates lock tables map and the storage of
+   * given kind for given number of variables.
+   *
+   * @param siteId        The id of Site object
+   * @param variableCount The number of variables in the database
+   * @param storeKind     The kind of store holding the data of the copies
+   * @return This site
+   * @throws NullPointerException     if storeKind is null
+   * @throws IllegalArgumentException if variableCount is negative
+   */
+  Site(int siteId, int variableCount, SiteStore.Kind storeKind) {
+    if (variableCount < 0) {
+      throw new IllegalArgumentException("variableCount must not be negative.");
+    }
     this.status = Status.UP;
     this.siteId = siteId;
-    this.lockTable = new HashMap<>();
-    this.variableMap = new HashMap<>();
+    this.locks = new LockTable(variableCount);
+    this.hosted = new BitSet(variableCount + 1);
+    this.replicated = new BitSet(variableCount + 1);
+    this.store = SiteStore.create(Objects.requireNonNull(storeKind, "storeKind must not be null."), variableCount);
+    this.accessCounts = new int[variableCount + 1];
     this.lastFailedTime = 0;
   }
 
@@ -44,139 +78,309 @@ class Site {
   void fail(int time) {
     status = Status.DOWN;
     lastFailedTime = time;
-    lockTable.clear();
+    locks.clear();
   }
 
   /**
-   * Recovers the site from failure and change status as UP.
+   * Recovers the site from failure and change status as UP. Replicated variables cannot be read until they are
+   * written again.
    */
   void recover() {
     this.status = Status.UP;
-    String variableId;
-    int id;
-    for (Map.Entry<String, Variable> variable : variableMap.entrySet()) {
-      variableId = variable.getKey().substring(1);
-      id = Integer.valueOf(variableId);
-      if (id % 2 == 0) {
-        variable.getValue().setIsReadable(false);
-      }
+    for (int index = replicated.nextSetBit(0); index >= 0; index = replicated.nextSetBit(index + 1)) {
+      store.setReadable(index, false);
+    }
+  }
+
+  /**
+   * Adds a copy of variable with given number into the site, holding its initial value.
+   *
+   * @param index      The number of variable
+   * @param replicated true if the variable has copies at other sites
+   * @throws IndexOutOfBoundsException if index is not a variable of the database
+   */
+  void addVariableToSite(int index, boolean replicated) {
+    if (index < 1 || index >= accessCounts.length) {
+      throw new IndexOutOfBoundsException("variable index out of range: " + index);
     }
+    hosted.set(index);
+    this.replicated.set(index, replicated);
+    store.initialize(index, index * 10);
   }
 
   /**
-   * Adds a variable into the variable list.
+   * Copies the copy of variable with given number from another site, with its current value, its committed versions
+   * and its access count.
    *
-   * @param variable The variable id
-   * @throws NullPointerException if variable is null
+   * @param source     The site holding the variable
+   * @param index      The number of variable
+   * @param replicated true if the variable has copies at other sites
+   * @throws NullPointerException     if source is null
+   * @throws IllegalArgumentException if source does not hold the variable
    */
-  void addVariableToSite(Variable variable) {
-    if (!variableMap.containsValue(Objects.requireNonNull(variable, "variable must not be " + "null."))) {
-      variableMap.put(variable.getVariableId(), variable);
+  void copyVariable(Site source, int index, boolean replicated) {
+    if (!Objects.requireNonNull(source, "source must not be null.").hasVariable(index)) {
+      throw new IllegalArgumentException("site " + source.siteId + " does not hold x" + index);
     }
+    hosted.set(index);
+    this.replicated.set(index, replicated);
+    store.copy(source.store, index);
+    accessCounts[index] = source.accessCounts[index];
   }
 
   /**
-   * Gets a list of variable id from the site.
+   * Sets whether variable with given number has copies at other sites, so that its copy cannot be read after the
+   * site recovers until it is written again.
    *
-   * @return The variable list
+   * @param index      The number of variable
+   * @param replicated true if the variable has copies at other sites
    */
-  List<String> getVariableIdList() {
-    return new ArrayList<>(variableMap.keySet());
+  void setReplicated(int index, boolean replicated) {
+    this.replicated.set(index, replicated);
   }
 
   /**
-   * Gets the variable from variable list with given variable id.
+   * Removes the copy of variable with given number from the site.
    *
-   * @param variableId The id of variable
-   * @return The variable object at given id
-   * @throws NullPointerException if variableId is null
+   * @param index The number of variable
    */
-  Variable getVariable(String variableId) {
-    return Objects.requireNonNull(variableMap.get(variableId));
+  void removeVariable(int index) {
+    hosted.clear(index);
+    replicated.clear(index);
+    store.remove(index);
+    accessCounts[index] = 0;
   }
 
   /**
-   * Checks a lock table and conflict graph if variable can be read.
+   * Gets the number of reads and writes of the copy of variable with given number since the counts were cleared.
    *
-   * @param transactionId The transaction id
-   * @param variableId    The variable id
-   * @param conflictGraph The wait for graph
+   * @param index The number of variable
+   * @return The number of accesses
+   */
+  int getAccessCount(int index) {
+    return accessCounts[index];
+  }
+
+  /**
+   * Clears the access count of every copy held by the site.
+   */
+  void clearAccessCounts() {
+    Arrays.fill(accessCounts, 0);
+  }
+
+  /**
+   * Checks if the site holds a copy of variable with given number.
+   *
+   * @param variableId The number of variable
+   * @return true if the site holds a copy of variable
+   */
+  boolean hasVariable(int variableId) {
+    return hosted.get(variableId);
+  }
+
+  /**
+   * Gets the number of the first variable held by the site at or after given number.
+   *
+   * @param index The number to start from
+   * @return The number of variable, or -1 if there is none
+   */
+  int nextVariable(int index) {
+    return hosted.nextSetBit(index);
+  }
+
+  /**
+   * Check if the copy of variable can be read for Site recovery period
+   *
+   * @param variableId The number of variable
+   * @return true if the variable is allowed to read, false otherwise
+   */
+  boolean isReadable(int variableId) {
+    return store.isReadable(variableId);
+  }
+
+  /**
+   * Gets the number of locks held or waited for at the site.
+   *
+   * @return The number of locks
+   */
+  int getLockCount() {
+    return locks.size();
+  }
+
+  /**
+   * Gets the number of reads served by the site, not counting dumps.
+   *
+   * @return The number of reads
+   */
+  long getReadCount() {
+    return readCount;
+  }
+
+  /**
+   * Checks if any transaction holds or waits for a lock on variable with given number.
+   *
+   * @param variableId The number of variable
+   * @return true if there is a lock on variable
+   */
+  boolean hasLocks(int variableId) {
+    return locks.isLocked(variableId);
+  }
+
+  /**
+   * Adds the transactions holding or waiting for any lock at the site to given set.
+   *
+   * @param holders The set of handles of transactions
+   * @throws NullPointerException if holders is null
+   */
+  void addLockHolders(BitSet holders) {
+    locks.addHolders(holders);
+  }
+
+  /**
+   * Checks a lock table if variable can be read and adds the transactions holding a write lock on it to the
+   * transactions the reading transaction waits for.
+   *
+   * @param transactionId The handle of transaction
+   * @param variableId    The number of variable
+   * @param waitsFor      The transactions the reading transaction waits for in the wait for graph
    * @return true if the variable can read
+   * @throws NullPointerException if waitsFor is null
    */
-  boolean readLockVariable(String transactionId, String variableId, Map<String,
-          Set<String>> conflictGraph) {
-    if (!lockTable.containsKey(variableId)) {
-      lockTable.put(variableId, new ArrayList<>());
-    }
-    List<Lock> locks = lockTable.get(variableId);
-    if (locks.isEmpty()) {
-      locks.add(new Lock(Lock.Type.READ, transactionId, variableId));
-      return true;
-    } else {
-      Set<String> waiting = new HashSet<>();
-      boolean isReadable = true;
-      for (Lock lock : locks) {
-        if (!isReadable || !lock.getTransactionId().equals(transactionId)) {
-          if (lock.getType() == Lock.Type.WRITE) {
-            waiting.add(lock.getTransactionId());
-            isReadable = false;
-          }
-        } else {
-          return true;
-        }
-      }
-      if (!conflictGraph.containsKey(transactionId)) {
-        conflictGraph.put(transactionId, new HashSet<>());
-      }
-      conflictGraph.get(transactionId).addAll(waiting);
-      locks.add(new Lock(Lock.Type.READ, transactionId, variableId));
-
-      return isReadable;
-    }
+  boolean readLockVariable(int transactionId, int variableId, BitSet waitsFor) {
+    return locks.readLock(transactionId, variableId, Objects.requireNonNull(waitsFor, "waitsFor must not be null."));
+  }
+
+  /**
+   * Checks a lock table if variable can be written and adds a write lock on it. If another transaction holds the
+   * first lock, the write lock waits behind the other locks and their transactions are added to the transactions the
+   * writing transaction waits for. A read lock of the writing transaction in front is upgraded.
+   *
+   * @param transactionId The handle of transaction
+   * @param variableId    The number of variable
+   * @param waitsFor      The transactions the writing transaction waits for in the wait for graph
+   * @return true if the variable can be written
+   * @throws NullPointerException if waitsFor is null
+   */
+  boolean writeLockVariable(int transactionId, int variableId, BitSet waitsFor) {
+    return locks.writeLock(transactionId, variableId, Objects.requireNonNull(waitsFor, "waitsFor must not be null."));
   }
 
   /**
    * Reads the committed value from variable at given variable id for read-only.
    *
-   * @param variableId The id of variable object
+   * @param variableId The number of variable object
    * @param time       The time if requesting committed value
-   * @return The committed value of variable at given time
-   * @throws NullPointerException if variableId is null
+   * @return The value word of the committed value of variable at given time
    * @throws NullPointerException if time is null
    */
-  int readVariable(String variableId, int time) {
-    Variable variable = getVariable(Objects.requireNonNull(variableId, "variable id " + "must not be null."));
-    return variable.readOnly(time);
+  long readVariable(int variableId, int time) {
+    readCount++;
+    accessCounts[variableId]++;
+    return store.readVersion(variableId, time);
   }
 
   /**
    * Reads the value of the variable with given variable id. If it is already committed, then read last committed value.
    *
-   * @param variableId The id of variable object
-   * @return The value of variable object
-   * @throws NullPointerException if variableId is null
+   * @param variableId The number of variable object
+   * @return The value word of variable object
    * @throws NullPointerException if isCommitted is null
    */
-  int readVariable(String variableId, boolean committed) {
-    Variable variable = getVariable(Objects.requireNonNull(variableId, "variable id " + "must not be null."));
+  long readVariable(int variableId, boolean committed) {
     if (committed) {
-      return variable.getLastCommittedValue();
+      return store.getCommittedValue(variableId);
     }
-    return variable.getValue();
+    readCount++;
+    accessCounts[variableId]++;
+    return store.getValue(variableId);
+  }
+
+  /**
+   * Reads the last committed value of the variable with given variable id for a transaction.
+   *
+   * @param variableId The number of variable object
+   * @return The value word of the committed value of variable
+   */
+  long readCommittedValue(int variableId) {
+    readCount++;
+    accessCounts[variableId]++;
+    return store.getCommittedValue(variableId);
   }
 
   /**
    * Writes the value of variable at site and changes the status of variable as it can be readable.
    *
-   * @param variableId The id of variable object
-   * @param value      The value of written value
-   * @throws NullPointerException if variableId is null
+   * @param variableId The number of variable object
+   * @param value      The value word of written value
+   */
+  void writeValueAtSite(int variableId, long value) {
+    accessCounts[variableId]++;
+    store.setValue(variableId, value);
+    store.setReadable(variableId, true);
+  }
+
+  /**
+   * Commits the written value of variable with given id as a new version at given time, and removes the versions
+   * which no read-only transaction can read any more.
+   *
+   * @param variableId The number of variable object
+   * @param time       The time of commit
+   * @param horizon    The start time of the oldest read-only transaction which is still running, or the time of
+   *                   commit if there is none
+   */
+  void commitValue(int variableId, int time, int horizon) {
+    reclaimedVersions += store.commit(variableId, time, horizon);
+  }
+
+  /**
+   * Gets the time of the last commit of the copy of variable with given number.
+   *
+   * @param variableId The number of variable
+   * @return The time of commit, or -1 if the copy was never committed
    */
-  void writeValueAtSite(String variableId, int value) {
-    Variable variable = getVariable(Objects.requireNonNull(variableId, "variable id " + "must not be null."));
-    variable.writeValue(value);
-    variable.setIsReadable(true);
-    variableMap.put(variableId, variable);
+  int getCommitTime(int variableId) {
+    return store.getCommitTime(variableId);
+  }
+
+  /**
+   * Passes every value word which is not an int held by the copies at the site, with their versions, to given action.
+   *
+   * @param action The action taking each value word
+   */
+  void forEachValue(LongConsumer action) {
+    store.forEachValue(action);
+  }
+
+  /**
+   * Gets the number of versions kept by the copies at the site. A copy which was never committed holds one version.
+   *
+   * @return The number of versions
+   */
+  long getVersionCount() {
+    long count = 0;
+    for (int index = hosted.nextSetBit(0); index >= 0; index = hosted.nextSetBit(index + 1)) {
+      count += store.getVersionCount(index);
+    }
+    return count;
+  }
+
+  /**
+   * Gets the number of versions removed since the site was created because no read-only transaction could read
+   * them any more.
+   *
+   * @return The number of versions
+   */
+  long getReclaimedVersionCount() {
+    return reclaimedVersions;
+  }
+
+  /**
+   * When a transaction is aborted, it recovers value of variable with given id from the last committed value.
+   *
+   * @param variableId The number of variable object
+   */
+  void recoverValue(int variableId) {
+    store.rollback(variableId);
   }
 
 
@@ -187,17 +391,7 @@ class Site {
    * @throws NullPointerException if transaction is null
    */
   void releaseLocksFromTable(Transaction transaction) {
-    for (String lock : lockTable.keySet()) {
-      List<Lock> get = lockTable.get(lock);
-      for (int i = 0, getSize = get.size(); i < getSize; i++) {
-        Lock key = get.get(i);
-        String id = key.getTransactionId();
-        if ((transaction.getTransactionId()).equals(id)) {
-          lockTable.get(lock).remove(key);
-          break;
-        }
-      }
-    }
+    locks.release(transaction.getTransactionId());
   }
 
   /**
@@ -220,12 +414,12 @@ class Site {
   }
 
   /**
-   * Gets the lock table of site.
+   * Gets a copy of the lock table of site, keyed by the number of each locked variable.
    *
    * @return The lock table of site
    */
-  Map<String, List<Lock>> getLockTable() {
-    return lockTable;
+  Map<Integer, List<Lock>> getLockTable() {
+    return locks.toMap();
   }
 
   /**
@@ -1,102 +1,954 @@
-import java.util.*;
-
-/**
- * This class initializes variables and sites. It also holds the list of variables and sites.
- *
- * @author Hyung Jin Cho
- * @version 12/07/2018
- * @see Site
- */
-class SiteManager {
-  private static final int SITE = 10;
-  private static final int VARIABLE = 20;
-
-  private List<Site> sites;
-  private final List<Variable> variables = new ArrayList<>();
-
-  /**
-   * Constructor which initializes sites and variables
-   */
-  SiteManager() {
-    initializesSites();
-  }
-
-  /**
-   * Returns a list of all created sites
-   *
-   * @return The list of all created site objects. Returns an empty list if no sites have been created.
-   */
-  List<Site> getSites() {
-    return new ArrayList<>(sites);
-  }
-
-  /**
-   * Initializes each site with corresponding variables.
-   */
-  private void initializesSites() {
-    sites = new ArrayList<>();
-    String variableId;
-    Variable variable;
-    Site site;
-
-    // Create sites
-    for (int i = 1; i <= SITE; i++) {
-      site = new Site(i);
-      sites.add(site);
-    }
-
-    // Add variables into each sites
-    for (int i = 1; i <= VARIABLE; i++) {
-      variableId = "x" + i;
-      variable = new Variable(variableId);
-      variables.add(variable);
-
-      if (i % 2 == 1) {
-        int siteId = 1 + i % SITE;
-        sites.get(siteId - 1).addVariableToSite(variables.get(i - 1));
-      }
-      for (Site s : sites) {
-        s.addVariableToSite(deepCopyVariable(variables.get(i - 1)));
-      }
-    }
-  }
-
-  /**
-   * Makes deep copy of variable
-   *
-   * @param variable The variable object
-   * @return The new copied variable object
-   * @throws NullPointerException if variableId is null
-   */
-  private Variable deepCopyVariable(Variable variable) {
-    return new Variable(Objects.requireNonNull(variable, "variable must not be null").getVariableId());
-  }
-
-
-  /**
-   * Gets site with given variable id. If variable id is even, it returns all available site, otherwise returns
-   * specific site which is (id +1 % 10).
-   *
-   * @param variableId The id of variable object
-   * @return The site
-   */
-  Site getSite(String variableId) {
-    int id = Integer.parseInt(variableId.substring(1));
-    if (id % 2 != 1) {
-      for (Site site : getSites()) {
-        if (site.getStatus() == Site.Status.UP && site.getVariable(variableId).getIsReadable()) {
-          return site;
-        }
-      }
-      System.out.println("@Comment: There is no available site for accessing " + variableId);
-      return null;
-    } else {
-      int siteId = id + 1 % 10;
-      Site site = getSites().get(siteId - 1);
-      if (site.getStatus() == Site.Status.DOWN) {
-        return null;
-      }
-      return site;
-    }
-  }
-}
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * This class initializes variables and sites. It also holds the list of variables and sites.
+ * <p>
+ * It keeps a routing table which holds, for each variable, the bits of the sites whose copy of the variable is up
+ * and readable. Failing and recovering sites and writing values through this class update the table, so that a read
+ * is routed without scanning the sites.
+ * <p>
+ * With adaptive replication, it counts the reads and writes of each variable, and every adaptEvery transactions it
+ * replicates the variables which were read often and rarely written at every site, and stores them at one site
+ * again once they cooled down.
+ * <p>
+ * With ACTOR fan out, each site is an actor: its own thread owns its state and works through a mailbox of messages
+ * in the order they were sent. Messages which need no reply, e.g. writing, committing or releasing locks, are sent
+ * without waiting, so that the sites work on them while the caller goes on.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Site
+ */
+class SiteManager {
+  /**
+   * Enum replication policy: which variables have a copy at every site. A variable which is not replicated is only
+   * stored at its home site chosen by the placement.
+   */
+  enum Replication {
+    EVEN, ALL, NONE
+  }
+
+  /**
+   * Enum policy choosing which up and readable copy of a replicated variable a read is served from: the copy at the
+   * site of lowest id, the copies in turn, the copy at the site with the fewest locks, or a copy at a site the
+   * transaction already accessed, falling back to the copies in turn.
+   */
+  enum Selection {
+    FIRST, ROUND_ROBIN, LEAST_LOCKS, LOCALITY
+  }
+
+  /**
+   * Enum mode of the work done at several sites for one operation, e.g. locking and writing every copy of a
+   * replicated variable: one site after another on the calling thread, every site at once on its own thread, or
+   * every site on its own thread all the time, as an actor which is only sent messages
+   */
+  enum FanOut {
+    SERIAL, PARALLEL, ACTOR
+  }
+
+  private final EventSink events;
+  private final Config config;
+  private List<Site> sites;
+  private final int[] homeSiteIds;
+  private final BitSet upSites;
+  private final int routeWords;
+  private final long[] routes;
+  private int nextReadSite = 1;
+  private final BitSet promoted;
+  private final BitSet touched;
+  private final int[] readCounts;
+  private final int[] writeCounts;
+  private int transactionCount;
+  private final ExecutorService[] executors;
+  private final Future<?>[] futures;
+  private final BitSet writeSites;
+  private final BitSet readSites;
+  private final int[] lockCounts;
+  private final boolean actors;
+  private volatile RuntimeException messageFailure;
+
+  /**
+   * Constructor which initializes 10 sites and 20 variables, even variables replicated at every site
+   *
+   * @param events The sink receiving the events of site manager
+   * @throws NullPointerException if events is null
+   */
+  SiteManager(EventSink events) {
+    this(new Config(), events);
+  }
+
+  /**
+   * Constructor which initializes sites and variables
+   *
+   * @param config The number of sites, variables and the replication policy
+   * @param events The sink receiving the events of site manager
+   * @throws NullPointerException     if config or events is null
+   * @throws IllegalArgumentException if config is out of range
+   */
+  SiteManager(Config config, EventSink events) {
+    this.events = Objects.requireNonNull(events, "events must not be null.");
+    this.config = Objects.requireNonNull(config, "config must not be null.").validate();
+    this.homeSiteIds = new int[config.variables + 1];
+    this.upSites = new BitSet(config.sites + 1);
+    this.routeWords = (config.sites >>> 6) + 1;
+    this.routes = new long[(config.variables + 1) * routeWords];
+    this.promoted = new BitSet();
+    this.touched = new BitSet();
+    this.readCounts = new int[config.adaptEvery > 0 ? config.variables + 1 : 0];
+    this.writeCounts = new int[readCounts.length];
+    this.actors = config.fanOut == FanOut.ACTOR;
+    this.executors = config.fanOut != FanOut.SERIAL ? new ExecutorService[config.sites + 1] : null;
+    this.futures = new Future<?>[executors == null ? 0 : config.sites + 1];
+    this.writeSites = new BitSet(config.sites + 1);
+    this.readSites = new BitSet(config.sites + 1);
+    this.lockCounts = new int[config.sites + 1];
+    initializesSites();
+  }
+
+  /**
+   * Returns a list of all created sites. With ACTOR fan out, it first waits until every site processed the messages
+   * sent to it, and the caller may touch the sites until it sends the next message.
+   *
+   * @return The unmodifiable list of all created site objects in the order of their id
+   */
+  List<Site> getSites() {
+    drain();
+    return sites;
+  }
+
+  /**
+   * Gets site with given site id. With ACTOR fan out, it first waits until the site processed the messages sent to
+   * it, and the caller may touch the site until it sends the next message.
+   *
+   * @param siteId The id of site
+   * @return The site
+   * @throws IllegalArgumentException if there is no site with given id
+   */
+  Site getSite(int siteId) {
+    if (actors) {
+      ask(siteId, site -> null);
+    }
+    return site(siteId);
+  }
+
+  private Site site(int siteId) {
+    if (siteId < 1 || siteId > sites.size()) {
+      throw new IllegalArgumentException("unknown site: " + siteId);
+    }
+    return sites.get(siteId - 1);
+  }
+
+  /**
+   * Gets the number of sites.
+   *
+   * @return The number of sites
+   */
+  int getSiteCount() {
+    return config.sites;
+  }
+
+  /**
+   * Gets the number of variables.
+   *
+   * @return The number of variables
+   */
+  int getVariableCount() {
+    return config.variables;
+  }
+
+  /**
+   * Gets the number of versions kept by the copies at every site.
+   *
+   * @return The number of versions
+   */
+  long getVersionCount() {
+    long count = 0;
+    for (Site site : getSites()) {
+      count += site.getVersionCount();
+    }
+    return count;
+  }
+
+  /**
+   * Gets the number of versions removed at every site because no read-only transaction could read them any more.
+   *
+   * @return The number of versions
+   */
+  long getReclaimedVersionCount() {
+    long count = 0;
+    for (Site site : getSites()) {
+      count += site.getReclaimedVersionCount();
+    }
+    return count;
+  }
+
+  /**
+   * Checks that there is a variable with given number.
+   *
+   * @param variableId The number of variable
+   * @return The number of variable
+   * @throws IllegalArgumentException if there is no variable with given number
+   */
+  int checkVariable(int variableId) {
+    if (variableId < 1 || variableId > config.variables) {
+      throw new IllegalArgumentException("unknown variable: x" + variableId);
+    }
+    return variableId;
+  }
+
+  /**
+   * Gets the number of variable with given id, e.g. 3 for x3.
+   *
+   * @param variableId The id of variable
+   * @return The number of variable
+   * @throws NullPointerException     if variableId is null
+   * @throws IllegalArgumentException if variableId is not the id of a variable
+   */
+  static int parseVariableId(String variableId) {
+    Objects.requireNonNull(variableId, "variable id must not be null.");
+    try {
+      if (variableId.length() > 1 && variableId.charAt(0) == 'x') {
+        return Integer.parseInt(variableId.substring(1));
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new IllegalArgumentException("unknown variable: " + variableId);
+  }
+
+  /**
+   * Checks if variable with given number has a copy at every site, by the replication policy or because it is hot.
+   *
+   * @param index The number of variable
+   * @return true if the variable is replicated
+   */
+  boolean isReplicated(int index) {
+    return isReplicatedByPolicy(index) || promoted.get(index);
+  }
+
+  private boolean isReplicatedByPolicy(int index) {
+    switch (config.replication) {
+      case ALL:
+        return true;
+      case NONE:
+        return false;
+      default:
+        return index % 2 == 0;
+    }
+  }
+
+  /**
+   * Gets the id of the only site storing variable with given number, if it is not replicated.
+   *
+   * @param index The number of variable
+   * @return The id of site
+   */
+  int getHomeSiteId(int index) {
+    return homeSiteIds[index];
+  }
+
+  /**
+   * Gets the id of the first site at or after given id which holds a copy of variable with given number, whether it
+   * is up or not.
+   *
+   * @param index  The number of variable
+   * @param siteId The id of site to start from
+   * @return The id of site, or -1 if there is none
+   */
+  int nextReplica(int index, int siteId) {
+    if (isReplicated(index)) {
+      return siteId <= config.sites ? Math.max(siteId, 1) : -1;
+    }
+    int home = getHomeSiteId(index);
+    return siteId <= home ? home : -1;
+  }
+
+  /**
+   * Checks if the site with given id is up.
+   *
+   * @param siteId The id of site
+   * @return true if the site is up
+   */
+  boolean isUp(int siteId) {
+    return upSites.get(siteId);
+  }
+
+  /**
+   * Makes the site with given id fail at given time and removes its copies from the routing table.
+   *
+   * @param siteId The id of site
+   * @param time   The time of site failed
+   * @throws IllegalArgumentException if there is no site with given id
+   */
+  void failSite(int siteId, int time) {
+    tell(siteId, site -> site.fail(time));
+    upSites.clear(siteId);
+    for (int index = 1; index <= config.variables; index++) {
+      clearRoute(index, siteId);
+    }
+  }
+
+  /**
+   * Recovers the site with given id if it is down and routes to its copies which can be read again.
+   *
+   * @param siteId The id of site
+   * @throws IllegalArgumentException if there is no site with given id
+   */
+  void recoverSite(int siteId) {
+    BitSet readable = ask(siteId, site -> {
+      if (site.getStatus() != Site.Status.DOWN) {
+        return null;
+      }
+      site.recover();
+      BitSet copies = new BitSet();
+      for (int index = site.nextVariable(1); index >= 0; index = site.nextVariable(index + 1)) {
+        if (site.isReadable(index)) {
+          copies.set(index);
+        }
+      }
+      return copies;
+    });
+    if (readable == null) {
+      return;
+    }
+    upSites.set(siteId);
+    for (int index = readable.nextSetBit(0); index >= 0; index = readable.nextSetBit(index + 1)) {
+      setRoute(index, siteId);
+    }
+  }
+
+  /**
+   * Writes value of variable with given number at every copy which is up, making the copies readable.
+   *
+   * @param variableId The number of variable
+   * @param value      The value word to write
+   * @throws IllegalArgumentException if there is no variable with given number
+   */
+  void writeValue(int variableId, long value) {
+    writeValue(variableId, value, null);
+  }
+
+  /**
+   * Writes value of variable with given number at every copy which is up and at one of given sites, making the
+   * copies readable.
+   *
+   * @param variableId The number of variable
+   * @param value      The value word to write
+   * @param siteIds    The ids of sites to write at, or null for every site
+   * @throws IllegalArgumentException if there is no variable with given number
+   */
+  void writeValue(int variableId, long value, BitSet siteIds) {
+    int index = checkVariable(variableId);
+    writeSites.clear();
+    for (int siteId = nextReplica(index, 1); siteId >= 0; siteId = nextReplica(index, siteId + 1)) {
+      if (upSites.get(siteId) && (siteIds == null || siteIds.get(siteId))) {
+        writeSites.set(siteId);
+        setRoute(index, siteId);
+      }
+    }
+    tellEachSite(writeSites, site -> site.writeValueAtSite(variableId, value));
+    if (readCounts.length > 0) {
+      writeCounts[index]++;
+      touched.set(index);
+    }
+  }
+
+  /**
+   * Runs given task at every site with given id and returns once all of them are done. With PARALLEL fan out, each
+   * site runs the tasks on its own thread, so that the sites work at the same time, and the calling thread waits for
+   * the slowest of them. With ACTOR fan out, the task is a message to each site, processed after the messages sent
+   * before. A site is only touched by one thread at a time.
+   *
+   * @param siteIds The ids of sites
+   * @param task    The task to run with each site
+   * @throws NullPointerException if siteIds or task is null
+   * @throws RuntimeException     the first exception thrown by a task, after every task is done
+   */
+  void forEachSite(BitSet siteIds, Consumer<Site> task) {
+    Objects.requireNonNull(task, "task must not be null.");
+    if (executors == null || !actors && siteIds.cardinality() < 2) {
+      for (int siteId = siteIds.nextSetBit(0); siteId >= 0; siteId = siteIds.nextSetBit(siteId + 1)) {
+        task.accept(getSite(siteId));
+      }
+      return;
+    }
+    for (int siteId = siteIds.nextSetBit(0); siteId >= 0; siteId = siteIds.nextSetBit(siteId + 1)) {
+      Site site = sites.get(siteId - 1);
+      futures[siteId] = executor(siteId).submit(() -> task.accept(site));
+    }
+    RuntimeException failure = null;
+    boolean interrupted = false;
+    for (int siteId = siteIds.nextSetBit(0); siteId >= 0; siteId = siteIds.nextSetBit(siteId + 1)) {
+      while (futures[siteId] != null) {
+        try {
+          futures[siteId].get();
+          futures[siteId] = null;
+        } catch (InterruptedException e) {
+          // the site must be done before the caller touches it again
+          interrupted = true;
+        } catch (ExecutionException e) {
+          futures[siteId] = null;
+          if (failure == null) {
+            failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException("task failed at site " + siteId, e.getCause());
+          }
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    checkMessages();
+  }
+
+  /**
+   * Sends given message to every site with given id without waiting for a reply. With ACTOR fan out, each site
+   * processes the message on its own thread after the messages sent before, otherwise it is the same as
+   * {@link #forEachSite(BitSet, Consumer)}. An exception thrown by the message is thrown by the next call which
+   * waits for a site.
+   *
+   * @param siteIds The ids of sites
+   * @param message The message to process at each site
+   * @throws NullPointerException if siteIds or message is null
+   */
+  void tellEachSite(BitSet siteIds, Consumer<Site> message) {
+    Objects.requireNonNull(message, "message must not be null.");
+    if (!actors) {
+      forEachSite(siteIds, message);
+      return;
+    }
+    for (int siteId = siteIds.nextSetBit(0); siteId >= 0; siteId = siteIds.nextSetBit(siteId + 1)) {
+      tell(siteId, message);
+    }
+  }
+
+  /**
+   * Sends given message to the site with given id without waiting for a reply. Without ACTOR fan out, the message is
+   * processed on the calling thread.
+   *
+   * @param siteId  The id of site
+   * @param message The message to process at the site
+   * @throws NullPointerException     if message is null
+   * @throws IllegalArgumentException if there is no site with given id
+   */
+  void tell(int siteId, Consumer<Site> message) {
+    Objects.requireNonNull(message, "message must not be null.");
+    Site site = site(siteId);
+    if (!actors) {
+      message.accept(site);
+      return;
+    }
+    executor(siteId).execute(() -> {
+      try {
+        message.accept(site);
+      } catch (RuntimeException e) {
+        if (messageFailure == null) {
+          messageFailure = e;
+        }
+      }
+    });
+  }
+
+  /**
+   * Sends given message to the site with given id and waits for its reply. Without ACTOR fan out, the message is
+   * processed on the calling thread.
+   *
+   * @param siteId  The id of site
+   * @param message The message to process at the site, returning the reply
+   * @param <R>     The type of reply
+   * @return The reply of site
+   * @throws NullPointerException     if message is null
+   * @throws IllegalArgumentException if there is no site with given id
+   * @throws RuntimeException         the exception thrown by the message, or by a message sent before without a
+   *                                  reply
+   */
+  <R> R ask(int siteId, Function<Site, R> message) {
+    Objects.requireNonNull(message, "message must not be null.");
+    Site site = site(siteId);
+    if (!actors) {
+      return message.apply(site);
+    }
+    Future<R> reply = executor(siteId).submit(() -> message.apply(site));
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          R result = reply.get();
+          checkMessages();
+          return result;
+        } catch (InterruptedException e) {
+          // the site must be done before the caller goes on
+          interrupted = true;
+        } catch (ExecutionException e) {
+          checkMessages();
+          throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                  : new IllegalStateException("message failed at site " + siteId, e.getCause());
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Waits until every site processed the messages sent to it, so that the caller may touch the sites until it
+   * sends the next message. It does nothing without ACTOR fan out.
+   *
+   * @throws RuntimeException the first exception thrown by a message sent without a reply
+   */
+  void drain() {
+    if (!actors) {
+      return;
+    }
+    for (int siteId = 1; siteId <= config.sites; siteId++) {
+      if (executors[siteId] != null) {
+        ask(siteId, site -> null);
+      }
+    }
+  }
+
+  /**
+   * Passes every value word which is not an int held by any site, up or down, to given action once the messages sent
+   * before were processed. With PARALLEL or ACTOR fan out, the action is called on the threads of the sites at the
+   * same time.
+   *
+   * @param action The action taking each value word
+   * @throws NullPointerException if action is null
+   */
+  void forEachValue(LongConsumer action) {
+    Objects.requireNonNull(action, "action must not be null.");
+    BitSet siteIds = new BitSet();
+    siteIds.set(1, config.sites + 1);
+    forEachSite(siteIds, site -> site.forEachValue(action));
+  }
+
+  private void checkMessages() {
+    RuntimeException failure = messageFailure;
+    if (failure != null) {
+      messageFailure = null;
+      throw failure;
+    }
+  }
+
+  private ExecutorService executor(int siteId) {
+    if (executors[siteId] == null) {
+      executors[siteId] = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "site-" + siteId);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return executors[siteId];
+  }
+
+  /**
+   * Counts a transaction which begins. Every adaptEvery transactions, it replicates the variables which were read at
+   * least hotReads times since the last time and written by at most one in ten accesses. It stores a replicated
+   * variable at one site again once it is read less than half as often or written more. A variable only changes
+   * while no transaction holds or waits for a lock on it.
+   */
+  void countTransaction() {
+    if (readCounts.length == 0 || ++transactionCount < config.adaptEvery) {
+      return;
+    }
+    transactionCount = 0;
+    BitSet candidates = (BitSet) touched.clone();
+    candidates.or(promoted);
+    for (int index = candidates.nextSetBit(0); index >= 0; index = candidates.nextSetBit(index + 1)) {
+      int reads = readCounts[index];
+      boolean readMostly = writeCounts[index] * 10 <= reads + writeCounts[index];
+      if (promoted.get(index)) {
+        if (reads * 2 < config.hotReads || !readMostly) {
+          demote(index);
+        }
+      } else if (!isReplicatedByPolicy(index) && reads >= config.hotReads && readMostly) {
+        promote(index);
+      }
+      readCounts[index] = 0;
+      writeCounts[index] = 0;
+    }
+    touched.clear();
+  }
+
+  /**
+   * Copies variable from its home site to every other site. The copies at failed sites cannot be read until the
+   * variable is written after they recover, as for every replicated variable.
+   */
+  private void promote(int index) {
+    drain();
+    int home = homeSiteIds[index];
+    Site source = sites.get(home - 1);
+    if (!upSites.get(home) || source.hasLocks(index)) {
+      return;
+    }
+    for (Site site : sites) {
+      if (site != source) {
+        site.copyVariable(source, index, true);
+        if (upSites.get(site.getSiteId()) && site.isReadable(index)) {
+          setRoute(index, site.getSiteId());
+        }
+      }
+    }
+    source.setReplicated(index, true);
+    promoted.set(index);
+    events.accept(EventSink.Event.VARIABLE_REPLICATED, EventSink.NO_ID, index, 0, 0);
+  }
+
+  /**
+   * Removes every copy of variable but one which can be read, preferably the one at its home site.
+   */
+  private void demote(int index) {
+    drain();
+    for (Site site : sites) {
+      if (site.hasLocks(index)) {
+        return;
+      }
+    }
+    int home = homeSiteIds[index];
+    int keep = hasRoute(index, home) ? home : firstRoute(index);
+    if (keep < 0) {
+      return;
+    }
+    for (Site site : sites) {
+      if (site.getSiteId() != keep) {
+        site.removeVariable(index);
+        clearRoute(index, site.getSiteId());
+      }
+    }
+    sites.get(keep - 1).setReplicated(index, false);
+    homeSiteIds[index] = keep;
+    promoted.clear(index);
+    events.accept(EventSink.Event.VARIABLE_UNREPLICATED, EventSink.NO_ID, index, 0, keep);
+  }
+
+  /**
+   * Moves the copy of a variable which is not replicated from its home site to another site while transactions keep
+   * running. The committed versions are copied, and the cutover only happens if no transaction holds or waits for a
+   * lock on the variable, so that no transaction sees both copies. Reads and writes are routed to the new site
+   * right away.
+   *
+   * @param variableId The number of variable
+   * @param siteId     The id of the site to move the variable to
+   * @return true if the variable was moved, false if it is locked or either site is down
+   * @throws IllegalArgumentException if there is no such variable or site, or the variable is replicated
+   */
+  boolean migrate(int variableId, int siteId) {
+    int index = checkVariable(variableId);
+    Site target = getSite(siteId);
+    if (isReplicated(index)) {
+      throw new IllegalArgumentException("x" + variableId + " is replicated and cannot be migrated.");
+    }
+    int home = homeSiteIds[index];
+    drain();
+    Site source = sites.get(home - 1);
+    if (home == siteId || !upSites.get(home) || !upSites.get(siteId) || source.hasLocks(index)) {
+      return false;
+    }
+    target.copyVariable(source, index, false);
+    source.removeVariable(index);
+    clearRoute(index, home);
+    if (target.isReadable(index)) {
+      setRoute(index, siteId);
+    }
+    homeSiteIds[index] = siteId;
+    events.accept(EventSink.Event.VARIABLE_MIGRATED, EventSink.NO_ID, variableId, home, siteId);
+    return true;
+  }
+
+  /**
+   * Moves every variable of given range which is not replicated to another site. Locked variables stay where they
+   * are.
+   *
+   * @param from   The number of the first variable of range
+   * @param to     The number of the last variable of range
+   * @param siteId The id of the site to move the variables to
+   * @return The number of variables moved
+   * @throws IllegalArgumentException if there is no such variable or site
+   */
+  int migrateRange(int from, int to, int siteId) {
+    checkVariable(from);
+    checkVariable(to);
+    int moved = 0;
+    for (int index = from; index <= to; index++) {
+      if (!isReplicated(index) && migrate(index, siteId)) {
+        moved++;
+      }
+    }
+    return moved;
+  }
+
+  /**
+   * Initializes each site with corresponding variables.
+   */
+  private void initializesSites() {
+    List<Site> created = new ArrayList<>(config.sites);
+
+    // Create sites
+    for (int i = 1; i <= config.sites; i++) {
+      created.add(new Site(i, config.variables, config.store));
+      upSites.set(i);
+    }
+
+    // Add variables into each sites
+    Placement placement = Placement.create(config.placement, config.sites, config.variables, config.virtualNodes);
+    for (int i = 1; i <= config.variables; i++) {
+      homeSiteIds[i] = placement.getHomeSiteId(i);
+      if (isReplicatedByPolicy(i)) {
+        for (Site s : created) {
+          s.addVariableToSite(i, true);
+          setRoute(i, s.getSiteId());
+        }
+      } else {
+        created.get(getHomeSiteId(i) - 1).addVariableToSite(i, false);
+        setRoute(i, getHomeSiteId(i));
+      }
+    }
+    sites = Collections.unmodifiableList(created);
+  }
+
+  private void setRoute(int index, int siteId) {
+    routes[index * routeWords + (siteId >>> 6)] |= 1L << siteId;
+  }
+
+  private void clearRoute(int index, int siteId) {
+    routes[index * routeWords + (siteId >>> 6)] &= ~(1L << siteId);
+  }
+
+  private int firstRoute(int index) {
+    return nextRoute(index, 0);
+  }
+
+  private int nextRoute(int index, int siteId) {
+    int word = siteId >>> 6;
+    if (word >= routeWords) {
+      return -1;
+    }
+    int offset = index * routeWords;
+    long bits = routes[offset + word] & (-1L << siteId);
+    while (bits == 0) {
+      if (++word == routeWords) {
+        return -1;
+      }
+      bits = routes[offset + word];
+    }
+    return (word << 6) + Long.numberOfTrailingZeros(bits);
+  }
+
+  private boolean hasRoute(int index, int siteId) {
+    return (routes[index * routeWords + (siteId >>> 6)] & (1L << siteId)) != 0;
+  }
+
+  /**
+   * Chooses the site to read replicated variable from by the selection policy.
+   *
+   * @param index         The number of variable
+   * @param first         The lowest id of an up and readable site of variable
+   * @param accessedSites The ids of sites the reading transaction already accessed, or null if unknown
+   * @return The id of site
+   */
+  private int selectRoute(int index, int first, BitSet accessedSites) {
+    switch (config.selection) {
+      case LEAST_LOCKS: // count the locks of every copy in one fan out rather than asking each site in turn
+        readSites.clear();
+        for (int siteId = first; siteId >= 0; siteId = nextRoute(index, siteId + 1)) {
+          readSites.set(siteId);
+        }
+        forEachSite(readSites, site -> lockCounts[site.getSiteId()] = site.getLockCount());
+        int least = first;
+        for (int siteId = readSites.nextSetBit(first + 1); siteId >= 0; siteId = readSites.nextSetBit(siteId + 1)) {
+          if (lockCounts[siteId] < lockCounts[least]) {
+            least = siteId;
+          }
+        }
+        return least;
+      case LOCALITY:
+        if (accessedSites != null) {
+          for (int siteId = accessedSites.nextSetBit(0); siteId >= 0; siteId = accessedSites.nextSetBit(siteId + 1)) {
+            if (siteId <= config.sites && hasRoute(index, siteId)) {
+              return siteId;
+            }
+          }
+        }
+        return roundRobin(index, first);
+      case ROUND_ROBIN:
+        return roundRobin(index, first);
+      default:
+        return first;
+    }
+  }
+
+  /**
+   * Chooses the next up and readable copy of replicated variable in turn.
+   *
+   * @param index The number of variable
+   * @param first The lowest id of an up and readable site of variable
+   * @return The id of site
+   */
+  private int roundRobin(int index, int first) {
+    int siteId = nextRoute(index, nextReadSite);
+    if (siteId < 0) {
+      siteId = first;
+    }
+    nextReadSite = siteId == config.sites ? 1 : siteId + 1;
+    return siteId;
+  }
+
+  /**
+   * Gets site to read variable with given number from. If variable is replicated, it returns an available site
+   * chosen by the selection policy, otherwise returns its home site.
+   *
+   * @param variableId The number of variable object
+   * @return The site, or null if no copy is up and readable
+   * @throws IllegalArgumentException if there is no variable with given number
+   */
+  Site getSiteOfVariable(int variableId) {
+    return getSiteOfVariable(variableId, null);
+  }
+
+  /**
+   * Gets site to read variable with given number from. If variable is replicated, it returns an available site
+   * chosen by the selection policy, otherwise returns its home site.
+   *
+   * @param variableId    The number of variable object
+   * @param accessedSites The ids of sites the reading transaction already accessed, or null if unknown
+   * @return The site, or null if no copy is up and readable
+   * @throws IllegalArgumentException if there is no variable with given number
+   */
+  Site getSiteOfVariable(int variableId, BitSet accessedSites) {
+    int id = checkVariable(variableId);
+    if (readCounts.length > 0) {
+      readCounts[id]++;
+      touched.set(id);
+    }
+    int siteId = firstRoute(id);
+    if (siteId >= 0) {
+      if (isReplicated(id)) {
+        siteId = selectRoute(id, siteId, accessedSites);
+      }
+      return sites.get(siteId - 1);
+    }
+    if (isReplicated(id)) {
+      events.accept(EventSink.Event.NO_AVAILABLE_SITE, EventSink.NO_ID, variableId, 0, 0);
+    }
+    return null;
+  }
+
+  /**
+   * Settings of the database: the number of sites, the number of variables and the replication policy.
+   */
+  static final class Config {
+    static final String KEYS = "sites, variables, replication, selection, placement, virtualNodes, adaptEvery, "
+            + "hotReads, fanOut, store, protocol, updates";
+
+    int sites = 10;
+    int variables = 20;
+    Replication replication = Replication.EVEN;
+    Selection selection = Selection.FIRST;
+    Placement.Kind placement = Placement.Kind.MODULO;
+    int virtualNodes = 160;
+    int adaptEvery = 0;
+    int hotReads = 16;
+    FanOut fanOut = FanOut.SERIAL;
+    SiteStore.Kind store = SiteStore.Kind.HEAP;
+    TransactionManager.Protocol protocol = TransactionManager.Protocol.LOCKING;
+    TransactionManager.Updates updates = TransactionManager.Updates.IN_PLACE;
+
+    /**
+     * Sets the setting with given key.
+     *
+     * @param key   The key of setting
+     * @param value The value of setting
+     * @return true if the key is a setting of the database, false otherwise
+     * @throws IllegalArgumentException if the value is invalid
+     */
+    boolean set(String key, String value) {
+      try {
+        switch (key) {
+          case "sites":
+            sites = Integer.parseInt(value);
+            return true;
+          case "variables":
+            variables = Integer.parseInt(value);
+            return true;
+          case "replication":
+            replication = Replication.valueOf(value.toUpperCase(Locale.ROOT));
+            return true;
+          case "selection":
+            selection = Selection.valueOf(value.toUpperCase(Locale.ROOT));
+            return true;
+          case "placement":
+            placement = Placement.Kind.parse(value);
+            return true;
+          case "virtualNodes":
+            virtualNodes = Integer.parseInt(value);
+            return true;
+          case "adaptEvery":
+            adaptEvery = Integer.parseInt(value);
+            return true;
+          case "hotReads":
+            hotReads = Integer.parseInt(value);
+            return true;
+          case "fanOut":
+            fanOut = FanOut.valueOf(value.toUpperCase(Locale.ROOT));
+            return true;
+          case "store":
+            store = SiteStore.Kind.parse(value);
+            return true;
+          case "protocol":
+            protocol = TransactionManager.Protocol.valueOf(value.toUpperCase(Locale.ROOT));
+            return true;
+          case "updates":
+            updates = TransactionManager.Updates.valueOf(value.toUpperCase(Locale.ROOT));
+            return true;
+          default:
+            return false;
+        }
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("invalid value for " + key + ": " + value);
+      }
+    }
+
+    /**
+     * Checks that the settings are in range.
+     *
+     * @return This config
+     * @throws IllegalArgumentException if the number of sites or variables is not positive
+     */
+    Config validate() {
+      if (sites < 1 || variables < 1 || virtualNodes < 1 || hotReads < 1 || adaptEvery < 0 || replication == null
+              || selection == null || placement == null || fanOut == null || store == null
+              || protocol == null || updates == null) {
+        throw new IllegalArgumentException("sites, variables, virtualNodes and hotReads must be positive, adaptEvery "
+                + "must not be negative, replication must be one of " + Arrays.toString(Replication.values())
+                + ", selection must be one of " + Arrays.toString(Selection.values()) + ", placement must be one of "
+                + Arrays.toString(Placement.Kind.values()) + ", fanOut must be one of "
+                + Arrays.toString(FanOut.values()) + ", store must be one of "
+                + Arrays.toString(SiteStore.Kind.values()) + ", protocol must be one of "
+                + Arrays.toString(TransactionManager.Protocol.values()) + ", updates must be one of "
+                + Arrays.toString(TransactionManager.Updates.values()) + ".");
+      }
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return "sites=" + sites + " variables=" + variables + " replication=" + replication + " selection="
+              + selection + " placement=" + placement + (placement == Placement.Kind.HASH ? " virtualNodes="
+              + virtualNodes : "") + (adaptEvery > 0 ? " adaptEvery=" + adaptEvery + " hotReads=" + hotReads : "")
+              + " fanOut=" + fanOut + " store=" + store + " protocol=" + protocol
+              + " updates=" + updates;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+import java.util.Locale;
+import java.util.function.LongConsumer;
+
+/**
+ * This interface stores the data of the copies at a site: the current value, the last committed value, whether the
+ * copy can be read, and the committed versions read by read-only transactions. Site delegates the data to its store
+ * and keeps the locks and the placement of the copies itself.
+ * <p>
+ * Values are value words, see {@link Value}. A store keeps the tags of their types only once it holds a value which
+ * is not an int.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Site
+ */
+interface SiteStore {
+  /**
+   * Enum kinds of store: arrays and version objects on the heap, or columns in direct buffers outside the heap
+   */
+  enum Kind {
+    HEAP, OFF_HEAP;
+
+    /**
+     * Gets the kind with given name, ignoring case.
+     *
+     * @param name The name of kind
+     * @return The kind
+     * @throws IllegalArgumentException if there is no kind with given name
+     */
+    static Kind parse(String name) {
+      return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+  }
+
+  /**
+   * Creates the store of given kind.
+   *
+   * @param kind          The kind of store
+   * @param variableCount The number of variables in the database
+   * @return The store
+   * @throws NullPointerException     if kind is null
+   * @throws IllegalArgumentException if variableCount is negative
+   */
+  static SiteStore create(Kind kind, int variableCount) {
+    if (variableCount < 0) {
+      throw new IllegalArgumentException("variableCount must not be negative.");
+    }
+    switch (kind) {
+      case OFF_HEAP:
+        return new OffHeapSiteStore(variableCount);
+      default:
+        return new HeapSiteStore(variableCount);
+    }
+  }
+
+  /**
+   * Stores given value as the current and the committed value of variable with given number, readable and without
+   * versions.
+   *
+   * @param index The number of variable
+   * @param value The initial value
+   */
+  void initialize(int index, int value);
+
+  /**
+   * Copies the data of variable with given number from another store of the same kind, with its versions.
+   *
+   * @param source The store holding the variable
+   * @param index  The number of variable
+   * @throws IllegalArgumentException if source is not of the same kind
+   */
+  void copy(SiteStore source, int index);
+
+  /**
+   * Removes the data of variable with given number, with its versions.
+   *
+   * @param index The number of variable
+   */
+  void remove(int index);
+
+  /**
+   * Gets the current value of variable with given number, which may not be committed yet.
+   *
+   * @param index The number of variable
+   * @return The value word
+   */
+  long getValue(int index);
+
+  /**
+   * Sets the current value of variable with given number.
+   *
+   * @param index The number of variable
+   * @param value The value word
+   */
+  void setValue(int index, long value);
+
+  /**
+   * Gets the last committed value of variable with given number.
+   *
+   * @param index The number of variable
+   * @return The value word of the committed value
+   */
+  long getCommittedValue(int index);
+
+  /**
+   * Sets the current value of variable with given number back to its last committed value.
+   *
+   * @param index The number of variable
+   */
+  void rollback(int index);
+
+  /**
+   * Checks if the copy of variable with given number can be read.
+   *
+   * @param index The number of variable
+   * @return true if the copy can be read
+   */
+  boolean isReadable(int index);
+
+  /**
+   * Sets whether the copy of variable with given number can be read.
+   *
+   * @param index    The number of variable
+   * @param readable true if the copy can be read
+   */
+  void setReadable(int index, boolean readable);
+
+  /**
+   * Commits the current value of variable with given number as a version at given time, and removes the versions
+   * older than the newest version committed before given horizon. The first commit also keeps the initial value as
+   * a version at time 0.
+   *
+   * @param index   The number of variable
+   * @param time    The time of commit
+   * @param horizon The time of the oldest snapshot which may still be read
+   * @return The number of versions removed
+   */
+  int commit(int index, int time, int horizon);
+
+  /**
+   * Reads the last version of variable with given number committed before given time, or the first version if
+   * there is none. Without versions, it reads the committed value.
+   *
+   * @param index The number of variable
+   * @param time  The time of snapshot
+   * @return The value word
+   */
+  long readVersion(int index, int time);
+
+  /**
+   * Gets the time of the last commit of variable with given number.
+   *
+   * @param index The number of variable
+   * @return The time of commit, or -1 if the copy was never committed
+   */
+  int getCommitTime(int index);
+
+  /**
+   * Gets the number of versions kept of variable with given number. A copy which was never committed holds one
+   * version.
+   *
+   * @param index The number of variable
+   * @return The number of versions
+   */
+  int getVersionCount(int index);
+
+  /**
+   * Passes every value word held by the store which is not an int, current, committed or of a version, to given
+   * action, e.g. to mark the values of a ValueTable which are still held. A store of ints passes nothing.
+   *
+   * @param action The action taking each value word
+   */
+  void forEachValue(LongConsumer action);
+}
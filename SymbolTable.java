@@ -0,0 +1,134 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * This class interns names into dense integer handles. Names are looked up directly from raw bytes so that a name
+ * which was already seen does not allocate a String again.
+ * <p>
+ * Only one thread may intern names, but any thread that received a handle safely from it may read the name.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see ScriptTokenizer
+ */
+class SymbolTable {
+  private int[] slots;
+  private byte[][] bytes;
+  private volatile String[] names;
+  private int size;
+
+  /**
+   * Constructor for an empty symbol table.
+   */
+  SymbolTable() {
+    slots = new int[64];
+    Arrays.fill(slots, -1);
+    bytes = new byte[16][];
+    names = new String[16];
+  }
+
+  /**
+   * Interns the name stored in given byte range.
+   *
+   * @param buffer The buffer holding the name
+   * @param from   The index of the first byte of the name
+   * @param to     The index after the last byte of the name
+   * @return The handle of the name
+   */
+  int intern(byte[] buffer, int from, int to) {
+    int hash = hash(buffer, from, to);
+    int mask = slots.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int handle = slots[slot];
+      if (handle < 0) {
+        byte[] name = Arrays.copyOfRange(buffer, from, to);
+        return add(name, new String(name, StandardCharsets.UTF_8), slot);
+      }
+      if (matches(bytes[handle], buffer, from, to)) {
+        return handle;
+      }
+    }
+  }
+
+  /**
+   * Interns given name.
+   *
+   * @param name The name to intern
+   * @return The handle of the name
+   * @throws NullPointerException if name is null
+   */
+  int intern(String name) {
+    byte[] buffer = Objects.requireNonNull(name, "name must not be null.").getBytes(StandardCharsets.UTF_8);
+    return intern(buffer, 0, buffer.length);
+  }
+
+  /**
+   * Gets the name of given handle.
+   *
+   * @param handle The handle of the name
+   * @return The name
+   */
+  String name(int handle) {
+    return names[handle];
+  }
+
+  /**
+   * Gets the number of interned names.
+   *
+   * @return The number of names
+   */
+  int size() {
+    return size;
+  }
+
+  private int add(byte[] name, String string, int slot) {
+    String[] current = names;
+    if (size == current.length) {
+      current = Arrays.copyOf(current, size * 2);
+      names = current;
+      bytes = Arrays.copyOf(bytes, size * 2);
+    }
+    int handle = size++;
+    current[handle] = string;
+    bytes[handle] = name;
+    slots[slot] = handle;
+    if (size * 2 > slots.length) {
+      rehash();
+    }
+    return handle;
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    Arrays.fill(slots, -1);
+    int mask = slots.length - 1;
+    for (int handle = 0; handle < size; handle++) {
+      int slot = hash(bytes[handle], 0, bytes[handle].length) & mask;
+      while (slots[slot] >= 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = handle;
+    }
+  }
+
+  private static int hash(byte[] buffer, int from, int to) {
+    int hash = 0x811c9dc5;
+    for (int i = from; i < to; i++) {
+      hash = (hash ^ buffer[i]) * 0x01000193;
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  private static boolean matches(byte[] name, byte[] buffer, int from, int to) {
+    if (name.length != to - from) {
+      return false;
+    }
+    for (int i = 0; i < name.length; i++) {
+      if (name[i] != buffer[from + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
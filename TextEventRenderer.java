@@ -0,0 +1,279 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * This class renders events as the text lines printed by RepCRec. Events are rendered into a byte buffer without
+ * creating Strings and the buffer is written to the output stream once it is full or flushed. The names of
+ * transactions are looked up from the symbol table their handles were interned in, and values which are not ints
+ * from the value table they were interned in.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see EventSink
+ */
+class TextEventRenderer implements EventSink {
+  private static final int FLUSH_SIZE = 1 << 13;
+  private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+  private final OutputStream out;
+  private final SymbolTable transactionIds;
+  private final ValueTable values;
+  private byte[] buffer = new byte[FLUSH_SIZE * 2];
+  private int size;
+
+  /**
+   * Constructor for renderer writing to given stream.
+   *
+   * @param out            The stream to write the rendered text to
+   * @param transactionIds The symbol table holding the names of transactions
+   * @param values         The value table holding the values which are not ints
+   * @throws NullPointerException if out, transactionIds or values is null
+   */
+  TextEventRenderer(OutputStream out, SymbolTable transactionIds, ValueTable values) {
+    this.out = Objects.requireNonNull(out, "out must not be null.");
+    this.transactionIds = Objects.requireNonNull(transactionIds, "transactionIds must not be null.");
+    this.values = Objects.requireNonNull(values, "values must not be null.");
+  }
+
+  @Override
+  public void accept(Event event, int transactionId, int variableId, long value, int siteId) {
+    switch (event) {
+      case BEGIN:
+        transaction(transactionId).append(" begins").newLine();
+        break;
+      case BEGIN_READ_ONLY:
+        transaction(transactionId).append(" begins and is read-only").newLine();
+        break;
+      case COMMIT:
+        transaction(transactionId).append(" commits").newLine();
+        break;
+      case ABORT:
+        transaction(transactionId).append(" aborts").newLine();
+        break;
+      case ALREADY_ABORTED:
+        transaction(transactionId).append(" was aborted").newLine();
+        break;
+      case DEADLOCK_VICTIM:
+        transaction(transactionId).append(" aborts since it is youngest in the cycle.").newLine();
+        break;
+      case WRITE_CONFLICT:
+        transaction(transactionId).append(" aborts since ").variable(variableId)
+                .append(" was committed by another transaction after it began.").newLine();
+        break;
+      case READ_CONFLICT:
+        transaction(transactionId).append(" aborts since ").variable(variableId)
+                .append(" was committed by another transaction after it read it.").newLine();
+        break;
+      case STILL_WAITING:
+        transaction(transactionId).append(" is still waiting.").newLine();
+        break;
+      case END_NOT_BEGUN:
+        append("Error message: ").transaction(transactionId).append(" has not begun yet. So it cannot end.").newLine();
+        break;
+      case WRITE_NOT_BEGUN:
+        append("Error message: ").transaction(transactionId).append(" has not begun yet. So it cannot write.").newLine();
+        break;
+      case ABORT_NOT_BEGUN:
+        append("Error message: ").transaction(transactionId).append(" has not begun yet. So it cannot abort.").newLine();
+        break;
+      case READ_ONLY_READ:
+        transaction(transactionId).append(" reads value ").value(value).append(" from variable ").variable(variableId)
+                .newLine();
+        break;
+      case READ_LOCK_GRANTED:
+        transaction(transactionId).append(" got read lock to read value ").value(value).append(" from variable ")
+                .variable(variableId).newLine();
+        break;
+      case READ_WAITING:
+        transaction(transactionId).append(" is waiting for ").variable(variableId).append(".").newLine();
+        break;
+      case READ_WHILE_WAITING:
+        append("It cannot read since ").transaction(transactionId).append(" is still waiting.").newLine();
+        break;
+      case READ_AFTER_ABORT:
+        transaction(transactionId).append(" was aborted so it failed to read from variable ").variable(variableId)
+                .append(".").newLine();
+        break;
+      case READ_SITE_DOWN:
+        transaction(transactionId).append(" cannot be performed since variable ").variable(variableId)
+                .append(" was trying to access on failed site.").newLine();
+        break;
+      case WRITE_LOCK_GRANTED:
+        transaction(transactionId).append(" got write lock to write value ").value(value).append(" on variable ")
+                .variable(variableId).append(" at site ").append(siteId).append(".").newLine();
+        break;
+      case WRITE_LOCK_GRANTED_ALL_SITES:
+        transaction(transactionId).append(" got write lock to write value ").value(value).append(" on variable ")
+                .variable(variableId).append(" at all available sites.").newLine();
+        break;
+      case WRITE_BUFFERED:
+        transaction(transactionId).append(" buffers value ").value(value).append(" for variable ")
+                .variable(variableId).append(" until it commits.").newLine();
+        break;
+      case WRITE_WAITING:
+        transaction(transactionId).append(" is waiting.").newLine();
+        break;
+      case WRITE_WHILE_WAITING:
+        append("It cannot write value on ").variable(variableId).append(" since ").transaction(transactionId)
+                .append(" is still waiting.").newLine();
+        break;
+      case WRITE_AFTER_ABORT:
+        append("Failed to read ").variable(variableId).append(" because ").transaction(transactionId)
+                .append(" was already aborted.").newLine();
+        break;
+      case WRITE_SITE_DOWN:
+        append("It cannot write value on variable ").variable(variableId).append(" at failed site ").append(siteId)
+                .append(".").newLine();
+        break;
+      case NO_AVAILABLE_SITE:
+        append("@Comment: There is no available site for accessing ").variable(variableId).newLine();
+        break;
+      case SITE_FAILED:
+        append("site ").append(siteId).append(" was failed ").newLine();
+        break;
+      case ABORTED_BY_SITE_FAILURE:
+        append("@Comment: ").transaction(transactionId).append(" was aborted because site ").append(siteId)
+                .append(" was failed.").newLine();
+        break;
+      case SITE_RECOVERED:
+        append("site ").append(siteId).append(" was recovered from failure.").newLine();
+        break;
+      case VARIABLE_MIGRATED:
+        append("@Comment: ").variable(variableId).append(" was migrated from site ").append((int) value)
+                .append(" to site ").append(siteId).append(".").newLine();
+        break;
+      case VARIABLE_REPLICATED:
+        append("@Comment: ").variable(variableId).append(" is hot and was replicated at every site.").newLine();
+        break;
+      case VARIABLE_UNREPLICATED:
+        append("@Comment: ").variable(variableId).append(" cooled down and is only stored at site ").append(siteId)
+                .append(".").newLine();
+        break;
+      case DUMP_SITE:
+        append("Site ").append(siteId).append(" - ");
+        break;
+      case DUMP_VALUE:
+        variable(variableId).append(": ").value(value).append(", ");
+        break;
+      case DUMP_LAST_VALUE:
+        variable(variableId).append(": ").value(value);
+        break;
+      case DUMP_VARIABLE_AT_SITE:
+        variable(variableId).append(": ").value(value).append(" at site ").append(siteId).newLine();
+        break;
+      case DUMP_VARIABLE_AT_ALL_SITES:
+        variable(variableId).append(": ").value(value).append(" at all available sites").newLine();
+        break;
+      case DUMP_VARIABLE_AT_SITES:
+        variable(variableId).append(": ").value(value).append(" at site");
+        break;
+      case DUMP_VARIABLE_SITE:
+        append(" ").append(siteId);
+        break;
+      case DUMP_END:
+        newLine();
+        break;
+      default:
+        throw new IllegalArgumentException("unknown event: " + event);
+    }
+    if (size >= FLUSH_SIZE) {
+      flush();
+    }
+  }
+
+  @Override
+  public void message(String text) {
+    append(text).newLine();
+    if (size >= FLUSH_SIZE) {
+      flush();
+    }
+  }
+
+  @Override
+  public void flush() {
+    try {
+      out.write(buffer, 0, size);
+      out.flush();
+      size = 0;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private TextEventRenderer append(String text) {
+    String s = String.valueOf(text);
+    int length = s.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x80) {
+        size -= i;
+        byte[] encoded = s.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(encoded.length);
+        System.arraycopy(encoded, 0, buffer, size, encoded.length);
+        size += encoded.length;
+        return this;
+      }
+      buffer[size++] = (byte) c;
+    }
+    return this;
+  }
+
+  private TextEventRenderer transaction(int transactionId) {
+    return append(transactionIds.name(transactionId));
+  }
+
+  private TextEventRenderer value(long word) {
+    return Value.isInt(word) ? append((int) word) : append(values.toString(word));
+  }
+
+  private TextEventRenderer variable(int variableId) {
+    ensureCapacity(1);
+    buffer[size++] = 'x';
+    return append(variableId);
+  }
+
+  private TextEventRenderer append(int number) {
+    ensureCapacity(11);
+    if (number == Integer.MIN_VALUE) {
+      return append(Integer.toString(number));
+    }
+    if (number < 0) {
+      buffer[size++] = '-';
+      number = -number;
+    }
+    int end = size + digits(number);
+    for (int i = end - 1; i >= size; i--) {
+      buffer[i] = (byte) ('0' + number % 10);
+      number /= 10;
+    }
+    size = end;
+    return this;
+  }
+
+  private void newLine() {
+    ensureCapacity(LINE_SEPARATOR.length);
+    for (byte b : LINE_SEPARATOR) {
+      buffer[size++] = b;
+    }
+  }
+
+  private void ensureCapacity(int length) {
+    if (size + length > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+    }
+  }
+
+  private static int digits(int number) {
+    int digits = 1;
+    while (number >= 10) {
+      number /= 10;
+      digits++;
+    }
+    return digits;
+  }
+}
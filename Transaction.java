@@ -1,4 +1,5 @@
 import java.util.*;
+import java.util.function.LongConsumer;
 
 /**
  * This class represents a transaction of process that will be used by TransactionManager class. It contains all
@@ -16,11 +17,25 @@ class Transaction {
     RUNNING, WAITING, ABORTED, COMMITTED
   }
 
-  final Map<Integer, Integer> accessSiteTime = new HashMap<>();
-  private final String transactionId;
+  private static final int[] NONE = new int[0];
+  private static final long[] NO_VALUES = new long[0];
+  private static final BitSet[] NO_SITES = new BitSet[0];
+
+  final BitSet accessedSites = new BitSet();
+  private int[] accessSiteTime = new int[16];
+  private final int transactionId;
   private final int time;
   private final boolean isReadOnly;
-  final List<String> checkedVariableIds = new ArrayList<>();
+  int[] checkedVariableIds = new int[8];
+  int checkedVariableCount;
+  int[] readVariableIds = NONE;
+  int[] readSiteIds = NONE;
+  int[] readCommitTimes = NONE;
+  int readCount;
+  int[] writeVariableIds = NONE;
+  long[] writeValues = NO_VALUES;
+  BitSet[] writeSites = NO_SITES;
+  int writeCount;
   private Operation operation;
   private boolean canCommit;
   Status status;
@@ -28,16 +43,16 @@ class Transaction {
   /**
    * Constructor for transaction object.
    *
-   * @param transactionId The id of transaction
+   * @param transactionId The handle of transaction
    * @param time          The time of transaction executed
    * @param isReadOnly    The boolean variable to check if read only transaction
-   * @throws NullPointerException if transactionId is null
    */
-  Transaction(String transactionId, int time, boolean isReadOnly) {
-    this.transactionId = Objects.requireNonNull(transactionId);
+  Transaction(int transactionId, int time, boolean isReadOnly) {
+    this.transactionId = transactionId;
     this.time = time;
     this.isReadOnly = isReadOnly;
     this.canCommit = true;
+    this.status = Status.RUNNING;
   }
 
   /**
@@ -57,17 +72,141 @@ class Transaction {
    * @param time   The time of transaction
    */
   void accessedSite(int siteId, int time) {
-    if (!accessSiteTime.containsKey(siteId)) {
-      accessSiteTime.put(siteId, time);
+    if (!accessedSites.get(siteId)) {
+      accessedSites.set(siteId);
+      if (siteId >= accessSiteTime.length) {
+        accessSiteTime = Arrays.copyOf(accessSiteTime, Math.max(siteId + 1, accessSiteTime.length * 2));
+      }
+      accessSiteTime[siteId] = time;
+    }
+  }
+
+  /**
+   * Gets the time the site with given id was accessed first.
+   *
+   * @param siteId The id of site
+   * @return The time of first access
+   */
+  int getAccessTime(int siteId) {
+    return accessSiteTime[siteId];
+  }
+
+  /**
+   * Adds the number of variable written by the transaction.
+   *
+   * @param variableId The number of variable
+   */
+  void addCheckedVariable(int variableId) {
+    if (checkedVariableCount == checkedVariableIds.length) {
+      checkedVariableIds = Arrays.copyOf(checkedVariableIds, checkedVariableCount * 2);
+    }
+    checkedVariableIds[checkedVariableCount++] = variableId;
+  }
+
+  /**
+   * Adds a read to the read set of the transaction, with the site it was read from and the time the value read was
+   * committed.
+   *
+   * @param variableId The number of variable
+   * @param siteId     The id of site
+   * @param commitTime The time of commit of the value read
+   */
+  void addRead(int variableId, int siteId, int commitTime) {
+    if (readCount == readVariableIds.length) {
+      int length = Math.max(8, readCount * 2);
+      readVariableIds = Arrays.copyOf(readVariableIds, length);
+      readSiteIds = Arrays.copyOf(readSiteIds, length);
+      readCommitTimes = Arrays.copyOf(readCommitTimes, length);
+    }
+    readVariableIds[readCount] = variableId;
+    readSiteIds[readCount] = siteId;
+    readCommitTimes[readCount++] = commitTime;
+  }
+
+  /**
+   * Buffers a write in the write set of the transaction, replacing the value buffered for the variable before. The
+   * sites given are added to the sites the write is installed at.
+   *
+   * @param variableId The number of variable
+   * @param value      The value word to write
+   * @param siteIds    The ids of sites the write locks were granted at, or null to install the write at every copy
+   *                   which is up at commit
+   */
+  void bufferWrite(int variableId, long value, BitSet siteIds) {
+    int i = findWrite(variableId);
+    if (i < 0) {
+      if (writeCount == writeVariableIds.length) {
+        int length = Math.max(8, writeCount * 2);
+        writeVariableIds = Arrays.copyOf(writeVariableIds, length);
+        writeValues = Arrays.copyOf(writeValues, length);
+        writeSites = Arrays.copyOf(writeSites, length);
+      }
+      i = writeCount++;
+      writeVariableIds[i] = variableId;
+      writeSites[i] = null;
+    }
+    writeValues[i] = value;
+    if (siteIds != null) {
+      if (writeSites[i] == null) {
+        writeSites[i] = new BitSet();
+      }
+      writeSites[i].or(siteIds);
+    }
+  }
+
+  /**
+   * Gets the position of variable with given number in the write set of the transaction.
+   *
+   * @param variableId The number of variable
+   * @return The position, or -1 if the transaction did not buffer a write of the variable
+   */
+  int findWrite(int variableId) {
+    for (int i = 0; i < writeCount; i++) {
+      if (writeVariableIds[i] == variableId) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Checks if the transaction wrote variable with given number.
+   *
+   * @param variableId The number of variable
+   * @return true if the transaction wrote the variable
+   */
+  boolean hasCheckedVariable(int variableId) {
+    for (int i = 0; i < checkedVariableCount; i++) {
+      if (checkedVariableIds[i] == variableId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Passes every value word which is not an int held by the transaction, buffered in its write set or by its waiting
+   * write, to given action.
+   *
+   * @param action The action taking each value word
+   */
+  void forEachValue(LongConsumer action) {
+    for (int i = 0; i < writeCount; i++) {
+      if (!Value.isInt(writeValues[i])) {
+        action.accept(writeValues[i]);
+      }
+    }
+    if (operation != null && !Value.isInt(operation.getValue())) {
+      action.accept(operation.getValue());
     }
   }
 
   /**
-   * Gets the id of transaction.
+   * Gets the handle of transaction.
    *
-   * @return The id of transaction
+   * @return The handle of transaction
    */
-  String getTransactionId() {
+  int getTransactionId() {
     return transactionId;
   }
 
@@ -1,9 +1,26 @@
 import java.util.*;
+import java.util.function.IntSupplier;
+import java.util.function.LongConsumer;
 
 /**
  * This class translates read and write requests on variables to read and write requests on copies using the
  * available copy algorithm. It takes transaction id and time from Driver class and process transaction with deadlock
  * detection.
+ * <p>
+ * Transactions are identified by dense handles, e.g. interned by a SymbolTable, and variables by their number, e.g.
+ * 3 for x3. The transactions and the wait for graph are arrays indexed by handle.
+ * <p>
+ * With SNAPSHOT protocol, read-write transactions read the versions committed before they began without read
+ * locks, like read-only transactions, and still lock what they write. A transaction which wrote a variable another
+ * transaction committed after it began aborts at its end, so that the first committer wins.
+ * <p>
+ * With OPTIMISTIC protocol, read-write transactions take no locks at all. They read the last committed values and
+ * keep them in their read set, and buffer their writes in their write set. At its end, a transaction commits only
+ * if no value it read was committed again since, and then installs its writes at every available copy.
+ * <p>
+ * With DEFERRED updates, the locking protocols also buffer the writes of a read-write transaction in its write set
+ * once the write locks are granted, instead of writing the copies in place, and install them only at commit. An
+ * abort then only discards the write set, with no copy to roll back. OPTIMISTIC protocol always defers its writes.
  *
  * @author Hyung Jin Cho
  * @version 12/07/2018
@@ -11,42 +28,104 @@ import java.util.*;
  * @see Driver
  */
 class TransactionManager {
-  private static final int NUM_SITE = 10;
-  private final Map<String, Transaction> transactions;
-  private final Map<String, Set<String>> conflictGraph;
-  private final List<String> waitingList;
-  private final List<String> abortList;
-  private final Driver driver;
+  /**
+   * The transaction to start the deadlock check of isDeadLock from, meaning the checked transaction itself.
+   */
+  static final int CHECK_POINT = -1;
+
+  /**
+   * Enum concurrency control protocol of read-write transactions: strict two phase locking of reads and writes,
+   * snapshot isolation with locked writes validated by first committer wins, or optimistic concurrency control
+   * validating the reads at the end
+   */
+  enum Protocol {
+    LOCKING, SNAPSHOT, OPTIMISTIC
+  }
+
+  /**
+   * Enum updates of read-write transactions: written to the copies in place when the write locks are granted and
+   * rolled back on abort, or deferred in the write set of the transaction until it commits
+   */
+  enum Updates {
+    IN_PLACE, DEFERRED
+  }
+
+  private Transaction[] transactions;
+  private BitSet[] conflictGraph;
+  private final BitSet conflictGraphNodes;
+  private int[] waitingList;
+  private int waitingCount;
+  private final BitSet abortList;
+  private final BitSet snapshots;
+  private final IntSupplier clock;
+  private final EventSink events;
   public final SiteManager siteManager;
-  private final StringBuilder sb;
+  private final BitSet lockSites;
+  private final boolean[] granted;
+  private final BitSet[] siteWaitsFor;
+  private final int[] failedTimes;
+  private final int[] conflicts;
+  private final int[] readTimes;
+  private final Protocol protocol;
+  private final boolean deferred;
+
+  /**
+   * Constructor for transaction manager of 10 sites and 20 variables
+   *
+   * @param clock  The supplier of the current time, e.g. the time of Driver class
+   * @param events The sink receiving every event of the transactions and sites
+   * @throws NullPointerException if clock or events is null.
+   */
+  TransactionManager(IntSupplier clock, EventSink events) {
+    this(clock, new SiteManager.Config(), events);
+  }
 
   /**
    * Constructor for transaction manager
    *
-   * @param driver The driver object from Driver class
-   * @throws NullPointerException if driver is null.
+   * @param clock  The supplier of the current time, e.g. the time of Driver class
+   * @param config The number of sites, variables and the replication policy
+   * @param events The sink receiving every event of the transactions and sites
+   * @throws NullPointerException     if clock, config or events is null.
+   * @throws IllegalArgumentException if config is out of range
    */
-  TransactionManager(Driver driver) {
-    siteManager = new SiteManager();
-    this.driver = Objects.requireNonNull(driver);
-    transactions = new HashMap<>();
-    conflictGraph = new HashMap<>();
-    waitingList = new ArrayList<>();
-    abortList = new ArrayList<>();
-    sb = new StringBuilder();
+  TransactionManager(IntSupplier clock, SiteManager.Config config, EventSink events) {
+    this.events = Objects.requireNonNull(events);
+    siteManager = new SiteManager(config, events);
+    this.clock = Objects.requireNonNull(clock);
+    transactions = new Transaction[64];
+    conflictGraph = new BitSet[64];
+    conflictGraphNodes = new BitSet();
+    waitingList = new int[16];
+    abortList = new BitSet();
+    snapshots = new BitSet();
+    lockSites = new BitSet();
+    granted = new boolean[siteManager.getSiteCount() + 1];
+    siteWaitsFor = new BitSet[siteManager.getSiteCount() + 1];
+    failedTimes = new int[siteManager.getSiteCount() + 1];
+    conflicts = new int[siteManager.getSiteCount() + 1];
+    readTimes = new int[siteManager.getSiteCount() + 1];
+    protocol = config.protocol;
+    deferred = protocol == Protocol.OPTIMISTIC || config.updates == Updates.DEFERRED;
+    for (int siteId = 1; siteId < siteWaitsFor.length; siteId++) {
+      siteWaitsFor[siteId] = new BitSet();
+    }
   }
 
   /**
    * Begins a transaction by checking if it is read only transaction and put it in the transaction list.
    *
-   * @param transactionId The id of the transaction
+   * @param transactionId The handle of the transaction
    * @param time          The time of the transaction
    * @param readOnly      The boolean variable if the transaction is read only
-   * @throws NullPointerException if transactionId is null.
+   * @throws IllegalArgumentException if transactionId is negative.
    */
-  void beginTransaction(String transactionId, int time, boolean readOnly) {
-    Transaction transaction = new Transaction(Objects.requireNonNull(transactionId,
-            "transaction id must not be null"), time, readOnly);
+  void beginTransaction(int transactionId, int time, boolean readOnly) {
+    if (transactionId < 0) {
+      throw new IllegalArgumentException("transaction id must not be negative");
+    }
+    siteManager.countTransaction();
+    Transaction transaction = new Transaction(transactionId, time, readOnly);
     /*
     if (transactions.containsKey(transactionId)) {
       System.out.println("Error message: " + transactionId + " has already begun. Check your input again.");
@@ -54,77 +133,92 @@ class TransactionManager {
     }
     */
 
-    transactions.put(transactionId, transaction);
+    if (transactionId >= transactions.length) {
+      int length = Math.max(transactionId + 1, transactions.length * 2);
+      transactions = Arrays.copyOf(transactions, length);
+      conflictGraph = Arrays.copyOf(conflictGraph, length);
+    }
+    transactions[transactionId] = transaction;
+    // a handle is reused by a transaction of the same name, e.g. once the client which began it disconnected
+    abortList.clear(transactionId);
+    snapshots.set(transactionId, readOnly || protocol == Protocol.SNAPSHOT);
     if (transaction.getIsReadOnly()) {
-      System.out.println(transactionId + " begins and is read-only");
+      events.accept(EventSink.Event.BEGIN_READ_ONLY, transactionId, EventSink.NO_ID, 0, 0);
     } else {
-      System.out.println(transactionId + " begins");
+      events.accept(EventSink.Event.BEGIN, transactionId, EventSink.NO_ID, 0, 0);
     }
   }
 
   /**
    * Terminates a transaction with given id. It commits read and write request if it can commit.
    *
-   * @param transactionId The transaction id of transaction object
+   * @param transactionId The transaction handle of transaction object
    * @param time          The time of transaction
-   * @throws NullPointerException if transactionId is null.
    */
-  void endTransaction(String transactionId, int time) {
-    Transaction transaction = transactions.get(Objects.requireNonNull(transactionId,
-            "transaction id must not be null"));
-    if (!transactions.containsKey(transactionId)) {
-      System.out.println("Error message: " + transactionId + " has not begun yet. So it cannot end.");
+  void endTransaction(int transactionId, int time) {
+    Transaction transaction = getTransaction(transactionId);
+    if (transaction == null) {
+      events.accept(EventSink.Event.END_NOT_BEGUN, transactionId, EventSink.NO_ID, 0, 0);
       return;
     }
-    if (waitingList.contains(transactionId) && isDeadLock("CheckPoint", transactionId)) {
+    if (isWaiting(transactionId) && isDeadLock(CHECK_POINT, transactionId)) {
       detectDeadlocks(transaction);
-    } else if (abortList.contains(transactionId)) {
-      System.out.println(transactionId + " was aborted");
+    } else if (abortList.get(transactionId)) {
+      events.accept(EventSink.Event.ALREADY_ABORTED, transactionId, EventSink.NO_ID, 0, 0);
       return;
     }
     // read case
     if (!transaction.getIsReadOnly()) {
       // check if variable was already written
-      for (int siteId : transaction.accessSiteTime.keySet()) {
-        Site site = siteManager.getSites().get(siteId - 1);
-        Variable variable;
-        for (String dirtyVariable : transaction.checkedVariableIds) {
-          variable = site.getVariable(dirtyVariable);
-          if (variable != null) {
-            if (transaction.getCanCommit()) {
-              variable.commitValue(time);
-            } else {
-              variable.recoverValue();
+      BitSet accessedSites = transaction.accessedSites;
+      if (protocol == Protocol.SNAPSHOT && transaction.getCanCommit()) {
+        validateSnapshot(transaction);
+      }
+      if (protocol == Protocol.OPTIMISTIC && transaction.getCanCommit()) {
+        validateReads(transaction); // locked reads and writes need no validation, the locks already guard them
+      }
+      if (deferred && transaction.getCanCommit()) {
+        installWrites(transaction);
+      }
+      boolean canCommit = transaction.getCanCommit();
+      int[] dirtyVariables = Arrays.copyOf(transaction.checkedVariableIds, transaction.checkedVariableCount);
+      int horizon = getLowWaterMark(time);
+      siteManager.forEachSite(accessedSites, site -> {
+        for (int dirtyVariable : dirtyVariables) {
+          if (site.hasVariable(dirtyVariable)) {
+            if (canCommit) {
+              site.commitValue(dirtyVariable, time, horizon);
+            } else if (!deferred) {
+              site.recoverValue(dirtyVariable);
             }
           }
         }
-      }
+        failedTimes[site.getSiteId()] = site.getLastFailedTime();
+      });
 
-      Site site;
       int firstTouch;
-      for (int siteId : transaction.accessSiteTime.keySet()) {
-        site = siteManager.getSites().get(siteId - 1);
+      for (int siteId = accessedSites.nextSetBit(0); siteId >= 0; siteId = accessedSites.nextSetBit(siteId + 1)) {
         // check if site was never touched
-        firstTouch = transaction.accessSiteTime.get(siteId);
-        if (site.getLastFailedTime() >= firstTouch) {
+        firstTouch = transaction.getAccessTime(siteId);
+        if (failedTimes[siteId] >= firstTouch) {
           transaction.setCanCommit(false);
           break;
         }
       }
 
       if (transaction.getCanCommit()) {
-        System.out.println(transactionId + " commits");
+        events.accept(EventSink.Event.COMMIT, transactionId, EventSink.NO_ID, 0, 0);
       }
       if (!transaction.getCanCommit()) {
-        System.out.println(transactionId + " aborts");
+        events.accept(EventSink.Event.ABORT, transactionId, EventSink.NO_ID, 0, 0);
       }
       abortTransaction(transactionId, !transaction.getCanCommit());
 
     } else { // read only case
-      for (int siteId : transaction.accessSiteTime.keySet()) {
-        Site site = siteManager.getSites().get(siteId - 1);
+      BitSet accessedSites = transaction.accessedSites;
+      for (int siteId = accessedSites.nextSetBit(0); siteId >= 0; siteId = accessedSites.nextSetBit(siteId + 1)) {
         // if site is down cannot commit
-        if (site.getStatus() == Site.Status.DOWN) {
+        if (!siteManager.isUp(siteId)) {
           transaction.setCanCommit(false);
           break;
         }
@@ -133,12 +227,14 @@ class TransactionManager {
       if (!transaction.getCanCommit()) {
         Operation op = new Operation.Builder(Operation.Type.COMMIT).build();
         transaction.addOperationToTransaction(op);
-        waitingList.add(transactionId);
+        addWaiting(transactionId);
         transaction.setStatus(Transaction.Status.WAITING);
 //        System.out.println(transactionId + " aborts");
       } else {
 //        System.out.println(transactionId + "reads value.");
-        System.out.println(transactionId + " commits");
+        transaction.setStatus(Transaction.Status.COMMITTED);
+        snapshots.clear(transactionId);
+        events.accept(EventSink.Event.COMMIT, transactionId, EventSink.NO_ID, 0, 0);
       }
     }
   }
@@ -148,14 +244,12 @@ class TransactionManager {
    * operation and add ito the waiting list. If it is read only transaction, it follows multi version read
    * consistency rule. If the transaction is on waiting list or abort list, it does not get read value.
    *
-   * @param transactionId The transaction id
-   * @param variableId    The variable id
-   * @throws NullPointerException if transactionId is null.
-   * @throws NullPointerException if variableId is null.
+   * @param transactionId The transaction handle
+   * @param variableId    The variable number
+   * @throws IllegalArgumentException if there is no variable with given number.
    */
-  public void readRequest(String transactionId, String variableId) {
-    Transaction transaction = transactions.get(Objects.requireNonNull(transactionId,
-            "transaction id must not be null"));
+  public void readRequest(int transactionId, int variableId) {
+    Transaction transaction = getTransaction(transactionId);
     /*
     if (!transactions.containsKey(transactionId)) {
       System.out.println("Error message: " + transactionId + " has not begun yet. So it cannot read.");
@@ -163,15 +257,14 @@ class TransactionManager {
     }
     */
 
-    Site site = siteManager.getSite(variableId);
+    Site site = siteManager.getSiteOfVariable(variableId, transaction == null ? null : transaction.accessedSites);
 
     // check waitingList and abortList
-    if (waitingList.contains(transactionId)) {
-      System.out.println("It cannot read since " + transactionId + " is still waiting.");
+    if (isWaiting(transactionId)) {
+      events.accept(EventSink.Event.READ_WHILE_WAITING, transactionId, EventSink.NO_ID, 0, 0);
       return;
-    } else if (abortList.contains(transactionId)) {
-      System.out.println(transactionId +
-              " was aborted so it failed to read from variable " + variableId + ".");
+    } else if (abortList.get(transactionId)) {
+      events.accept(EventSink.Event.READ_AFTER_ABORT, transactionId, variableId, 0, 0);
       return;
     }
 
@@ -180,41 +273,63 @@ class TransactionManager {
       Operation operation = new Operation.Builder(Operation.Type.READ).variableId
               (variableId).build();
       transaction.addOperationToTransaction(operation);
-      waitingList.add(transactionId);
+      addWaiting(transactionId);
       transaction.setStatus(Transaction.Status.WAITING);
-      System.out.println(transactionId + " cannot be performed since variable " +
-              variableId + " was trying to access on failed site.");
+      events.accept(EventSink.Event.READ_SITE_DOWN, transactionId, variableId, 0, 0);
       return;
     }
 
-    // check read only case
-    if (transaction.getIsReadOnly()) {
-      int value = site.readVariable(variableId, transaction.getTime());
-      transaction.accessedSite(site.getSiteId(), driver.time);
-      System.out.println(transactionId + " reads value " + value + " from variable " + variableId);
+    // check read only case, or a snapshot read of a variable the transaction did not write
+    int siteId = site.getSiteId();
+    if (transaction.getIsReadOnly()
+            || protocol == Protocol.SNAPSHOT && !transaction.hasCheckedVariable(variableId)) {
+      int time = transaction.getTime();
+      long value = siteManager.ask(siteId, s -> s.readVariable(variableId, time));
+      transaction.accessedSite(siteId, clock.getAsInt());
+      events.accept(EventSink.Event.READ_ONLY_READ, transactionId, variableId, value, 0);
+      return;
+    }
+
+    if (protocol == Protocol.OPTIMISTIC) {
+      int buffered = transaction.findWrite(variableId);
+      long value;
+      if (buffered >= 0) {
+        value = transaction.writeValues[buffered];
+      } else {
+        value = siteManager.ask(siteId, s -> {
+          readTimes[s.getSiteId()] = s.getCommitTime(variableId);
+          return s.readCommittedValue(variableId);
+        });
+        transaction.addRead(variableId, siteId, readTimes[siteId]);
+        transaction.accessedSite(siteId, clock.getAsInt());
+      }
+      events.accept(EventSink.Event.READ_ONLY_READ, transactionId, variableId, value, 0);
       return;
     }
 
-    // check deadlock case
-    if (!site.readLockVariable(transactionId, variableId, conflictGraph)) { // cannot write case
+    // check deadlock case, reading the value in the same message if the lock is granted
+    BitSet waitsFor = getWaitsFor(transactionId);
+    Long read = siteManager.ask(siteId, s -> s.readLockVariable(transactionId, variableId, waitsFor)
+            ? s.readVariable(variableId, false) : null);
+    if (read == null) { // cannot write case
       Operation operation = new Operation.Builder(Operation.Type.READ).variableId(variableId).build();
       transaction.addOperationToTransaction(operation);
-      if (!isDeadLock("CheckPoint", transactionId)) {
-        waitingList.add(transactionId);
+      if (!isDeadLock(CHECK_POINT, transactionId)) {
+        addWaiting(transactionId);
         transaction.setStatus(Transaction.Status.WAITING);
-        System.out.println(transactionId + " is waiting for " + variableId + ".");
+        events.accept(EventSink.Event.READ_WAITING, transactionId, variableId, 0, 0);
       } else {
-        detectDeadlocks(transactions.get(transactionId));
-        if (!abortList.contains(transactionId)) {
+        detectDeadlocks(transaction);
+        if (!abortList.get(transactionId)) {
           readRequest(transactionId, variableId);
         }
       }
-    } else { // can write case
-      int value = site.readVariable(variableId, false);
-      System.out.println(transactionId + " got read lock to read value " + value + " " +
-              "from variable " + variableId);
+    } else { // can write case, reading the own deferred write if there is one
+      int buffered = transaction.findWrite(variableId);
+      events.accept(EventSink.Event.READ_LOCK_GRANTED, transactionId, variableId,
+              buffered >= 0 ? transaction.writeValues[buffered] : read, 0);
     }
-    transaction.accessedSite(site.getSiteId(), driver.time);
+    transaction.accessedSite(siteId, clock.getAsInt());
   }
 
 
@@ -222,28 +337,29 @@ class TransactionManager {
    * Executes write request by checking dead lock. If the transaction is on waiting list on abort list, or does  not
    * exist yet, it cannot write value.
    *
-   * @param transactionId The transaction id
-   * @param variableId    The variable id
-   * @param value         The value of the variable
-   * @throws NullPointerException if transactionId is null
-   * @throws NullPointerException if variableId is null
+   * @param transactionId The transaction handle
+   * @param variableId    The variable number
+   * @param value         The value word of the variable, see {@link Value}
+   * @throws IllegalArgumentException if there is no variable with given number.
    */
-  public void writeRequest(String transactionId, String variableId, int value) {
-    Transaction transaction = transactions.get(Objects.requireNonNull(transactionId,
-            "transaction id must not be null"));
-    if (!transactions.containsKey(transactionId)) {
-      System.out.println("Error message: " + transactionId + " has not begun yet. So it cannot write.");
+  public void writeRequest(int transactionId, int variableId, long value) {
+    Transaction transaction = getTransaction(transactionId);
+    if (transaction == null) {
+      events.accept(EventSink.Event.WRITE_NOT_BEGUN, transactionId, EventSink.NO_ID, 0, 0);
       return;
     }
-    int id = Integer.valueOf(Objects.requireNonNull(variableId).substring(1));
-    Site site;
-    if (waitingList.contains(transactionId)) {
-      System.out.println("It cannot write value on " + variableId +
-              " since " + transactionId + " is still waiting.");
+    int id = siteManager.checkVariable(variableId);
+    if (isWaiting(transactionId)) {
+      events.accept(EventSink.Event.WRITE_WHILE_WAITING, transactionId, variableId, 0, 0);
       return;
-    } else if (abortList.contains(Objects.requireNonNull(transactionId))) {
-      System.out.println("Failed to read " + variableId + " because " +
-              transactionId + " was already aborted.");
+    } else if (abortList.get(transactionId)) {
+      events.accept(EventSink.Event.WRITE_AFTER_ABORT, transactionId, variableId, 0, 0);
+      return;
+    }
+
+    if (protocol == Protocol.OPTIMISTIC && !transaction.getIsReadOnly()) {
+      bufferWrite(transaction, id, value, null);
+      events.accept(EventSink.Event.WRITE_BUFFERED, transactionId, variableId, value, 0);
       return;
     }
 
@@ -252,36 +368,33 @@ class TransactionManager {
       Operation operation = new Operation.Builder(Operation.Type.WRITE).variableId
               (variableId).value(value).build();
       transaction.addOperationToTransaction(operation);
-      if (!isDeadLock("CheckPoint", transactionId)) {
-        waitingList.add(transactionId);
+      if (!isDeadLock(CHECK_POINT, transactionId)) {
+        addWaiting(transactionId);
         transaction.setStatus(Transaction.Status.WAITING);
-        System.out.println(transactionId + " is waiting.");
+        events.accept(EventSink.Event.WRITE_WAITING, transactionId, EventSink.NO_ID, 0, 0);
       } else {
-        detectDeadlocks(transactions.get(transactionId));
-        if (!abortList.contains(transactionId)) {
+        detectDeadlocks(transaction);
+        if (!abortList.get(transactionId)) {
           writeRequest(transactionId, variableId, value);
         }
       }
     } else {
-      if (id % 2 == 0) { //  even indexed variable
-        for (Site s : siteManager.getSites()) {
-          if (s.getStatus() == Site.Status.UP) {
-            s.writeValueAtSite(variableId, value);
-          }
-
+      if (deferred) { // keep the write in the write set until commit, with the sites it holds the locks at
+        bufferWrite(transaction, id, value, lockSites);
+      }
+      if (siteManager.isReplicated(id)) { //  replicated variable
+        if (!deferred) {
+          siteManager.writeValue(variableId, value);
+          transaction.addCheckedVariable(variableId);
         }
-        transactions.get(transactionId).checkedVariableIds.add(variableId);
-        System.out.println(transactionId + " got write lock to write value " + value +
-                " " + "on variable " + variableId + " at all available sites.");
-      } else { // for even indexed variable, write on all sites
-        int siteId = 1 + id % NUM_SITE;
-        site = siteManager.getSites().get(siteId - 1);
-        System.out.println(transactionId + " got write lock to write value " + value +
-                " " + "on variable " + variableId + " at site " + site.getSiteId() + ".");
-        if (site.getStatus() == Site.Status.UP) {
-          site.writeValueAtSite(variableId, value);
+        events.accept(EventSink.Event.WRITE_LOCK_GRANTED_ALL_SITES, transactionId, variableId, value, 0);
+      } else { // for variable stored at one site, write on that site
+        events.accept(EventSink.Event.WRITE_LOCK_GRANTED, transactionId, variableId, value,
+                siteManager.getHomeSiteId(id));
+        if (!deferred) {
+          siteManager.writeValue(variableId, value);
+          transaction.addCheckedVariable(variableId);
         }
-        transactions.get(transactionId).checkedVariableIds.add(variableId);
       }
     }
   }
@@ -289,68 +402,39 @@ class TransactionManager {
   /**
    * Check if it can write.
    *
-   * @param transactionId The id of transaction object
-   * @param variableId    The id of variable object
+   * @param transactionId The handle of transaction object
+   * @param variableId    The number of variable object
    * @return The boolean if write operation can perform
-   * @throws NullPointerException if transactionId is null
-   * @throws NullPointerException if variableId is null
+   * @throws IllegalArgumentException if there is no variable with given number.
    */
-  private boolean checkWrite(String transactionId, String variableId) {
-    List<Site> sites = new ArrayList<>();
-    int id = Integer.valueOf((variableId).substring(1));
+  boolean checkWrite(int transactionId, int variableId) {
+    int id = siteManager.checkVariable(variableId);
     int count = 0;
     boolean result = true;
 
-    if (id % 2 == 0) { // for odd indexed variable
-      sites.addAll(siteManager.getSites());
-    } else { // for even indexed variable
-      int siteId = id + 1 % NUM_SITE;
-      Site site = siteManager.getSites().get(siteId - 1);
-      sites.add(site);
-    }
-
-    for (Site site : sites) {
-      if (site.getStatus() == Site.Status.DOWN) {
+    // every site for replicated variable, otherwise the site storing it
+    lockSites.clear();
+    for (int siteId = siteManager.nextReplica(id, 1); siteId >= 0; siteId = siteManager.nextReplica(id, siteId + 1)) {
+      if (!siteManager.isUp(siteId)) {
         count++;
-        System.out.println("It cannot write value on variable " + variableId + " at " +
-                "failed site " + site.getSiteId() + ".");
+        events.accept(EventSink.Event.WRITE_SITE_DOWN, EventSink.NO_ID, variableId, 0, siteId);
         continue;
       }
-
-      // check if lock is available
-      transactions.get(transactionId).accessedSite(site.getSiteId(), driver.time);
-      if (!site.getLockTable().containsKey(variableId) || site.getLockTable().get(variableId).isEmpty()) {
-        List<Lock> locks = new ArrayList<>();
-        locks.add(new Lock(Lock.Type.WRITE, Objects.requireNonNull(transactionId), variableId));
-        site.getLockTable().put(variableId, locks);
-      } else { // lock is available
-
-        List<Lock> locks = site.getLockTable().get(variableId);
-        if (transactionId.equals(locks.get(0).getTransactionId())) {
-          if (Lock.Type.READ.equals(locks.get(0).getType())) {
-            site.getLockTable().get(variableId).remove(0);
-            site.getLockTable().get(variableId).add(0, new Lock(Lock.Type.WRITE,
-                    transactionId, variableId));
-          }
-        } else {
-
-          Set<String> waited = new HashSet<>();
-          for (Lock lock : locks) {
-            if (!transactionId.equals(lock.getTransactionId())) {
-              waited.add(lock.getTransactionId());
-            }
-            if (!conflictGraph.containsKey(transactionId)) {
-              conflictGraph.put(transactionId, new HashSet<>());
-            }
-            conflictGraph.get(transactionId).addAll(waited);
-          }
-          site.getLockTable().get(variableId).add(new Lock(Lock.Type.WRITE,
-                  transactionId, variableId));
-          result = false;
-        }
+      transactions[transactionId].accessedSite(siteId, clock.getAsInt());
+      lockSites.set(siteId);
+    }
+
+    // check if lock is available at each site, then gather the transactions it waits for
+    siteManager.forEachSite(lockSites, site -> granted[site.getSiteId()] = site.writeLockVariable(transactionId,
+            variableId, siteWaitsFor[site.getSiteId()]));
+    for (int siteId = lockSites.nextSetBit(0); siteId >= 0; siteId = lockSites.nextSetBit(siteId + 1)) {
+      if (!granted[siteId]) {
+        getWaitsFor(transactionId).or(siteWaitsFor[siteId]);
+        siteWaitsFor[siteId].clear();
+        result = false;
       }
     }
-    if (count == NUM_SITE) {
+    if (count == siteManager.getSiteCount()) {
       result = false; //all the sites fail or no working sites has var
     }
     return result;
@@ -363,17 +447,16 @@ class TransactionManager {
    * @throws NullPointerException if transaction is null.
    */
   private void detectDeadlocks(Transaction deadLockTransaction) {
-    List<String> tracking = new ArrayList<>();
-    String transactionId = Objects.requireNonNull(deadLockTransaction).getTransactionId();
-    List<String> cycle = new ArrayList<>();
-    dfsTraverse(transactionId, cycle, tracking);
-    System.out.println(transactionId + " aborts since it is youngest in the cycle.");
+    int transactionId = Objects.requireNonNull(deadLockTransaction).getTransactionId();
+    BitSet cycle = new BitSet();
+    dfsTraverse(transactionId, cycle);
+    events.accept(EventSink.Event.DEADLOCK_VICTIM, transactionId, EventSink.NO_ID, 0, 0);
 
 
     int time = 0;
     Transaction transaction;
-    for (String id : cycle) {
-      transaction = transactions.get(id);
+    for (int id = cycle.nextSetBit(0); id >= 0; id = cycle.nextSetBit(id + 1)) {
+      transaction = transactions[id];
       if (transaction.getTime() > time) {
         time = transaction.getTime();
       }
@@ -384,91 +467,203 @@ class TransactionManager {
   /**
    * Check if deadlock is exist.
    *
-   * @param checking      The id of checking
-   * @param transactionId The id of transaction
+   * @param checking      The handle of checking, or CHECK_POINT to start from the transaction
+   * @param transactionId The handle of transaction
    * @return The boolean check if dead lock is detected
-   * @throws NullPointerException if checking is null
-   * @throws NullPointerException if transactionId is null
    */
-  private boolean isDeadLock(String checking, String transactionId) {
-    if (Objects.requireNonNull(transactionId, "transaction id is must not be null.").
-            equals(Objects.requireNonNull(checking, "checking " + "is must not be null."))) {
+  boolean isDeadLock(int checking, int transactionId) {
+    if (transactionId == checking) {
       return true;
     }
 
-    if (checking.equals("CheckPoint")) checking = transactionId;
-    if (!(conflictGraph.containsKey(checking) && !conflictGraph.get(checking).isEmpty())) return false;
-    return conflictGraph.get(checking).stream().anyMatch(next -> isDeadLock(next, transactionId));
+    if (checking == CHECK_POINT) checking = transactionId;
+    BitSet next = waitsFor(checking);
+    if (next == null || next.isEmpty()) return false;
+    for (int id = next.nextSetBit(0); id >= 0; id = next.nextSetBit(id + 1)) {
+      if (isDeadLock(id, transactionId)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
-   * Recursive algorithms for depth-first-search. It uses a list of cycle and conflict graph.
+   * Recursive algorithms for depth-first-search. It uses the set of transactions on the current path of the
+   * conflict graph.
    *
    * @param currentTransactionId The starting transaction in DFS
    * @param cycle                The cycle in DFS
-   * @param tracking             The tracking in DFS
-   * @throws NullPointerException if currentTransactionId is null.
    * @throws NullPointerException if cycle is null.
    */
-  private void dfsTraverse(String currentTransactionId, List<String> cycle, List<String> tracking) {
-    if (conflictGraph.size() != 0 && conflictGraph.containsKey(Objects.requireNonNull(currentTransactionId))) {
-      Set<String> transactionIdSet = conflictGraph.get(currentTransactionId);
-      for (String transactionId : transactionIdSet) {
-        if (Objects.requireNonNull(cycle).contains(transactionId)) {
-          tracking = new ArrayList<>(cycle);
-        } else {
-          cycle.add(transactionId);
-          dfsTraverse(transactionId, cycle, tracking);
-          cycle.remove(transactionId);
+  private void dfsTraverse(int currentTransactionId, BitSet cycle) {
+    BitSet transactionIdSet = waitsFor(currentTransactionId);
+    if (transactionIdSet != null) {
+      for (int id = transactionIdSet.nextSetBit(0); id >= 0; id = transactionIdSet.nextSetBit(id + 1)) {
+        if (!Objects.requireNonNull(cycle).get(id)) {
+          cycle.set(id);
+          dfsTraverse(id, cycle);
+          cycle.clear(id);
         }
       }
     }
   }
 
+  /**
+   * Checks that no variable the transaction wrote was committed by another transaction since the transaction began,
+   * otherwise the transaction cannot commit.
+   *
+   * @param transaction The transaction to validate
+   */
+  private void validateSnapshot(Transaction transaction) {
+    int[] dirtyVariables = Arrays.copyOf(transaction.checkedVariableIds, transaction.checkedVariableCount);
+    int begin = transaction.getTime();
+    BitSet accessedSites = transaction.accessedSites;
+    siteManager.forEachSite(accessedSites, site -> {
+      int conflict = EventSink.NO_ID;
+      for (int dirtyVariable : dirtyVariables) {
+        if (site.hasVariable(dirtyVariable) && site.getCommitTime(dirtyVariable) >= begin) {
+          conflict = dirtyVariable;
+          break;
+        }
+      }
+      conflicts[site.getSiteId()] = conflict;
+    });
+    for (int siteId = accessedSites.nextSetBit(0); siteId >= 0; siteId = accessedSites.nextSetBit(siteId + 1)) {
+      if (conflicts[siteId] != EventSink.NO_ID) {
+        transaction.setCanCommit(false);
+        events.accept(EventSink.Event.WRITE_CONFLICT, transaction.getTransactionId(), conflicts[siteId], 0, 0);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Checks that every value the transaction read is still the last committed one at the site it was read from, that
+   * no site the transaction accessed failed since, and that every variable it wrote has a copy which is up.
+   * Otherwise the transaction cannot commit.
+   *
+   * @param transaction The transaction to validate
+   */
+  private void validateReads(Transaction transaction) {
+    int readCount = transaction.readCount;
+    int[] readVariableIds = transaction.readVariableIds;
+    int[] readSiteIds = transaction.readSiteIds;
+    int[] readCommitTimes = transaction.readCommitTimes;
+    BitSet accessedSites = transaction.accessedSites;
+    siteManager.forEachSite(accessedSites, site -> {
+      int conflict = EventSink.NO_ID;
+      for (int i = 0; i < readCount; i++) {
+        if (readSiteIds[i] == site.getSiteId() && site.getCommitTime(readVariableIds[i]) != readCommitTimes[i]) {
+          conflict = readVariableIds[i];
+          break;
+        }
+      }
+      conflicts[site.getSiteId()] = conflict;
+      failedTimes[site.getSiteId()] = site.getLastFailedTime();
+    });
+    for (int siteId = accessedSites.nextSetBit(0); siteId >= 0; siteId = accessedSites.nextSetBit(siteId + 1)) {
+      if (conflicts[siteId] != EventSink.NO_ID) {
+        transaction.setCanCommit(false);
+        events.accept(EventSink.Event.READ_CONFLICT, transaction.getTransactionId(), conflicts[siteId], 0, 0);
+        return;
+      }
+      if (failedTimes[siteId] >= transaction.getAccessTime(siteId)) {
+        transaction.setCanCommit(false);
+        return;
+      }
+    }
+    for (int i = 0; i < transaction.writeCount; i++) {
+      int variableId = transaction.writeVariableIds[i];
+      int siteId = siteManager.nextReplica(variableId, 1);
+      while (siteId >= 0 && !siteManager.isUp(siteId)) {
+        siteId = siteManager.nextReplica(variableId, siteId + 1);
+      }
+      if (siteId < 0) {
+        transaction.setCanCommit(false);
+        events.accept(EventSink.Event.NO_AVAILABLE_SITE, EventSink.NO_ID, variableId, 0, 0);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Writes the buffered values of the transaction, so that they are committed with the transaction. A write which
+   * took write locks is only written at the copies it holds the locks at, exactly as it would have been written in
+   * place, and an OPTIMISTIC write at every copy which is up.
+   *
+   * @param transaction The validated transaction
+   */
+  private void installWrites(Transaction transaction) {
+    for (int i = 0; i < transaction.writeCount; i++) {
+      int variableId = transaction.writeVariableIds[i];
+      BitSet siteIds = transaction.writeSites[i];
+      for (int siteId = siteManager.nextReplica(variableId, 1); siteId >= 0;
+           siteId = siteManager.nextReplica(variableId, siteId + 1)) {
+        if (siteManager.isUp(siteId) && (siteIds == null || siteIds.get(siteId))) {
+          transaction.accessedSite(siteId, clock.getAsInt());
+        }
+      }
+      siteManager.writeValue(variableId, transaction.writeValues[i], siteIds);
+    }
+  }
+
+  /**
+   * Buffers a write in the write set of the transaction. The variable is marked written the first time, so that it
+   * is committed at the sites the transaction accessed.
+   *
+   * @param transaction The writing transaction
+   * @param variableId  The number of variable
+   * @param value       The value word to write
+   * @param siteIds     The ids of sites the write locks were granted at, or null for every copy up at commit
+   */
+  private static void bufferWrite(Transaction transaction, int variableId, long value, BitSet siteIds) {
+    if (transaction.findWrite(variableId) < 0) {
+      transaction.addCheckedVariable(variableId);
+    }
+    transaction.bufferWrite(variableId, value, siteIds);
+  }
+
   /**
    * Aborts a transaction with given transaction id. Removes from waiting list, abort list, conflict graph, and
    * release lock from lock table. If there is next transaction that is waiting in the waiting list, then it executes
    * it.
    *
-   * @param abortedTransactionId The id of aborted transaction
+   * @param abortedTransactionId The handle of aborted transaction
    * @param canAbort             The boolean check if it can abort
-   * @throws NullPointerException if transactionId is null
    */
-  private void abortTransaction(String abortedTransactionId, boolean canAbort) {
-    Transaction abortedTransaction = transactions.get(Objects.requireNonNull(abortedTransactionId,
-            "abortedTransactionId must not be null" + "."));
-    if (!transactions.containsKey(abortedTransactionId)) {
-      System.out.println("Error message: " + abortedTransactionId + " has not begun yet. So it cannot abort.");
+  private void abortTransaction(int abortedTransactionId, boolean canAbort) {
+    Transaction abortedTransaction = getTransaction(abortedTransactionId);
+    if (abortedTransaction == null) {
+      events.accept(EventSink.Event.ABORT_NOT_BEGUN, abortedTransactionId, EventSink.NO_ID, 0, 0);
       return;
     }
-    Site site;
-    for (int siteId : abortedTransaction.accessSiteTime.keySet()) {
-      site = siteManager.getSites().get(siteId - 1);
-      site.releaseLocksFromTable(abortedTransaction);
-    }
+    BitSet accessedSites = abortedTransaction.accessedSites;
+    siteManager.tellEachSite(accessedSites, site -> site.releaseLocksFromTable(abortedTransaction));
 
-    abortedTransaction.setStatus(Transaction.Status.ABORTED);
-    waitingList.remove(abortedTransactionId);
+    abortedTransaction.setStatus(canAbort ? Transaction.Status.ABORTED : Transaction.Status.COMMITTED);
+    snapshots.clear(abortedTransactionId);
+    removeWaiting(abortedTransactionId);
 
-    for (String transactionId : conflictGraph.keySet())
-      conflictGraph.get(transactionId).stream().filter(next -> abortedTransaction.getTransactionId().equals(next))
-              .findFirst().ifPresent(next -> conflictGraph.get(transactionId).remove(next));
-    conflictGraph.remove(abortedTransaction.getTransactionId());
+    for (int id = conflictGraphNodes.nextSetBit(0); id >= 0; id = conflictGraphNodes.nextSetBit(id + 1)) {
+      conflictGraph[id].clear(abortedTransactionId);
+    }
+    conflictGraph[abortedTransactionId] = null;
+    conflictGraphNodes.clear(abortedTransactionId);
 
     if (canAbort) {
-      abortList.add(abortedTransactionId);
+      abortList.set(abortedTransactionId);
       abortedTransaction.setStatus(Transaction.Status.ABORTED);
-      Set<Integer> siteIds = abortedTransaction.accessSiteTime.keySet();
-      Variable variable;
-      for (int siteId : siteIds) {
-        site = siteManager.getSites().get(siteId - 1);
-        for (String dirtyVariableId : abortedTransaction.checkedVariableIds) {
-          if (site.getVariable(dirtyVariableId) != null) {
-            variable = site.getVariable(dirtyVariableId);
-            variable.recoverValue();
+    }
+    if (canAbort && !deferred) {
+      int[] dirtyVariableIds = Arrays.copyOf(abortedTransaction.checkedVariableIds,
+              abortedTransaction.checkedVariableCount);
+      siteManager.tellEachSite(accessedSites, site -> {
+        for (int dirtyVariableId : dirtyVariableIds) {
+          if (site.hasVariable(dirtyVariableId)) {
+            site.recoverValue(dirtyVariableId);
           }
         }
-      }
+      });
     }
     checkNextTransactionOnWaitingList();
   }
@@ -478,30 +673,30 @@ class TransactionManager {
    * still blocked by another transaction.
    */
   private void checkNextTransactionOnWaitingList() {
-    if (waitingList.isEmpty()) {
+    if (waitingCount == 0) {
       return;
     }
-    List<String> temp = new ArrayList<>(waitingList);
-    for (String nextTid : temp) {
-      if (!conflictGraph.containsKey(nextTid) || conflictGraph.get(nextTid).isEmpty()) {
-        waitingList.remove(nextTid);
-        String nextVid = transactions.get(nextTid).getOperation().getVariableId();
-        Transaction t = transactions.get(nextTid);
-        Operation operation = transactions.get(nextTid).getOperation();
+    int[] temp = Arrays.copyOf(waitingList, waitingCount);
+    for (int nextTid : temp) {
+      BitSet waitsFor = waitsFor(nextTid);
+      if (waitsFor == null || waitsFor.isEmpty()) {
+        removeWaiting(nextTid);
+        Transaction t = transactions[nextTid];
+        Operation operation = t.getOperation();
+        int nextVid = operation.getVariableId();
         if (operation.getType() == Operation.Type.READ) {
+          t.setStatus(Transaction.Status.RUNNING);
           readRequest(nextTid, nextVid);
+        } else if (operation.getType() == Operation.Type.WRITE) {
+          long nextVal = operation.getValue();
           t.setStatus(Transaction.Status.RUNNING);
-        } else if (transactions.get(nextTid).getOperation().getType() == Operation.Type
-                .WRITE) {
-          int nextVal = transactions.get(nextTid).getOperation().getValue();
           writeRequest(nextTid, nextVid, nextVal);
-          t.setStatus(Transaction.Status.RUNNING);
         } else {
-          endTransaction(nextTid, driver.time);
-          t.setStatus(Transaction.Status.COMMITTED);
+          t.setStatus(Transaction.Status.RUNNING);
+          endTransaction(nextTid, clock.getAsInt());
         }
       } else {
-        System.out.println(nextTid + " is still waiting.");
+        events.accept(EventSink.Event.STILL_WAITING, nextTid, EventSink.NO_ID, 0, 0);
       }
     }
   }
@@ -515,21 +710,17 @@ class TransactionManager {
    * @param time   when the site fails
    */
   void failSite(int siteId, int time) {
-    Set<String> abortedIdSet = new HashSet<>();
-    Site site = siteManager.getSites().get(siteId - 1);
-    site.getLockTable().forEach((key, value) -> {
-      for (int i = 0; i < value.size(); i++) {
-        Lock lock = value.get(i);
-        String transactionId = lock.getTransactionId();
-        abortedIdSet.add(transactionId);
-      }
+    BitSet abortedIdSet = siteManager.ask(siteId, site -> {
+      BitSet holders = new BitSet();
+      site.addLockHolders(holders);
+      return holders;
     });
-    System.out.println("site " + siteId + " was failed ");
-    for (String transactionId : abortedIdSet) {
-      System.out.println("@Comment: " + transactionId + " was aborted because site " + siteId + " was failed.");
-      abortTransaction(transactionId, true);
+    events.accept(EventSink.Event.SITE_FAILED, EventSink.NO_ID, EventSink.NO_ID, 0, siteId);
+    for (int id = abortedIdSet.nextSetBit(0); id >= 0; id = abortedIdSet.nextSetBit(id + 1)) {
+      events.accept(EventSink.Event.ABORTED_BY_SITE_FAILURE, id, EventSink.NO_ID, 0, siteId);
+      abortTransaction(id, true);
     }
-    site.fail(time);
+    siteManager.failSite(siteId, time);
   }
 
 
@@ -539,15 +730,14 @@ class TransactionManager {
    * e.g. site 1 – x1: 5, x2: 6, x3: 2, ... x20: 3
    */
   void dump() {
-    for (int siteId = 1; siteId <= NUM_SITE; siteId++) {
+    for (int siteId = 1; siteId <= siteManager.getSiteCount(); siteId++) {
       dump(siteId);
     }
 
     // use this commented code if it need to display all the value by variable.
     /* Display the committed values of all copies of all variables
     for (int i = 1; i <= NUM_VARIABLE; i++) {
-      String vid = "x" + i;
-      dump(vid);
+      dumpVariable(i);
     }
     */
   }
@@ -558,78 +748,58 @@ class TransactionManager {
    * @param siteId The id of site
    */
   void dump(int siteId) {
-    Site site = siteManager.getSites().get(siteId - 1);
-    List<String> variableIdList = site.getVariableIdList();
-    System.out.print("Site " + site.getSiteId() + " - ");
-    variableIdList.sort(new Comparator<String>() {
-      public int compare(String o1, String o2) {
-        return intCompare(o1) - intCompare(o2);
-      }
-
-      int intCompare(String s) {
-        String num = s.replaceAll("\\D", "");
-        return num.isEmpty() ? 0 : Integer.parseInt(num);
-      }
-    });
-
-    for (String vid : variableIdList) {
-      int index = Integer.valueOf(vid.substring(1));
-      if (index % 2 == 1) {
-        if ((index + 1 % 10) == siteId) {
-          int value = site.readVariable(vid, true);
-          System.out.print(vid + ": " + value + ", ");
-        }
-      } else if (index % 2 == 0) {
-        if (index < 20) {
-          int value = site.readVariable(vid, true);
-          System.out.print(vid + ": " + value + ", ");
-        } else {
-          int value = site.readVariable(vid, true);
-          System.out.print(vid + ": " + value);
-        }
+    Site site = siteManager.getSite(siteId);
+    events.accept(EventSink.Event.DUMP_SITE, EventSink.NO_ID, EventSink.NO_ID, 0, site.getSiteId());
+
+    // the last value of the line is printed without separator
+    int last = EventSink.NO_ID;
+    for (int index = site.nextVariable(1); index >= 0; index = site.nextVariable(index + 1)) {
+      if (last != EventSink.NO_ID) {
+        events.accept(EventSink.Event.DUMP_VALUE, EventSink.NO_ID, last, site.readVariable(last, true), 0);
       }
+      last = index;
+    }
+    if (last != EventSink.NO_ID) {
+      events.accept(EventSink.Event.DUMP_LAST_VALUE, EventSink.NO_ID, last, site.readVariable(last, true), 0);
     }
-    System.out.println();
+    events.accept(EventSink.Event.DUMP_END, EventSink.NO_ID, EventSink.NO_ID, 0, 0);
   }
 
   /**
    * Gives the committed values of all copies of variable xj at all sites, one line per
    * site.
    *
-   * @param variableId the variable id
+   * @param variableId the variable number
+   * @throws IllegalArgumentException if there is no variable with given number.
    */
-  void dump(String variableId) {
-    StringBuffer sb;
-    int index = Integer.valueOf(variableId.substring(1));
-    if (index % 2 == 0) {
-      Map<Integer, List<Integer>> values = new HashMap<>();
+  void dumpVariable(int variableId) {
+    int index = siteManager.checkVariable(variableId);
+    if (siteManager.isReplicated(index)) {
+      Map<Long, List<Integer>> values = new HashMap<>();
       for (Site site : siteManager.getSites()) {
-        int value = site.readVariable(variableId, true);
+        long value = site.readVariable(variableId, true);
         if (!values.containsKey(value)) {
           values.put(value, new ArrayList<>());
         }
         List<Integer> valueAtSite = values.get(value);
         valueAtSite.add(site.getSiteId());
       }
-      for (int v : values.keySet()) {
+      for (long v : values.keySet()) {
         if (values.size() != 1) {
-          sb = new StringBuffer(variableId + ": ").append(v).append(" at site ");
+          events.accept(EventSink.Event.DUMP_VARIABLE_AT_SITES, EventSink.NO_ID, variableId, v, 0);
           for (int s : values.get(v)) {
-            sb.append(s).append(" ");
+            events.accept(EventSink.Event.DUMP_VARIABLE_SITE, EventSink.NO_ID, EventSink.NO_ID, 0, s);
           }
-          System.out.println(sb.toString().trim());
+          events.accept(EventSink.Event.DUMP_END, EventSink.NO_ID, EventSink.NO_ID, 0, 0);
         } else {
-          System.out.println(variableId + ": " + v + " at all available sites");
+          events.accept(EventSink.Event.DUMP_VARIABLE_AT_ALL_SITES, EventSink.NO_ID, variableId, v, 0);
         }
       }
     } else {
-      Site site;
-      int siteId;
-      siteId = 1 + index % NUM_SITE;
-      site = siteManager.getSites().get(siteId - 1);
-      int value;
+      Site site = siteManager.getSite(siteManager.getHomeSiteId(index));
+      long value;
       value = site.readVariable(variableId, true);
-      System.out.println(variableId + ": " + value + " at site " + site.getSiteId());
+      events.accept(EventSink.Event.DUMP_VARIABLE_AT_SITE, EventSink.NO_ID, variableId, value, site.getSiteId());
     }
   }
 
@@ -640,24 +810,138 @@ class TransactionManager {
    * @param siteId The id of site
    */
   void recoverSite(int siteId) {
-    Site site = siteManager.getSites().get(siteId - 1);
-    if (site != null && site.getStatus() == Site.Status.DOWN) {
-      site.recover();
-    }
-    System.out.println("site " + siteId + " was recovered from failure.");
+    siteManager.recoverSite(siteId);
+    events.accept(EventSink.Event.SITE_RECOVERED, EventSink.NO_ID, EventSink.NO_ID, 0, siteId);
     checkNextTransactionOnWaitingList();
   }
 
+  /**
+   * Gets the status of transaction with given handle.
+   *
+   * @param transactionId The handle of transaction
+   * @return The status of transaction, or null if it has not begun
+   */
+  Transaction.Status getTransactionStatus(int transactionId) {
+    Transaction transaction = getTransaction(transactionId);
+    return transaction == null ? null : transaction.getStatus();
+  }
+
+  /**
+   * Gets the transactions the transaction with given handle waits for in the wait for graph, creating an empty set
+   * if it waits for none.
+   *
+   * @param transactionId The handle of waiting transaction
+   * @return The set of handles of transactions it waits for
+   */
+  BitSet getWaitsFor(int transactionId) {
+    if (transactionId >= conflictGraph.length) {
+      conflictGraph = Arrays.copyOf(conflictGraph, Math.max(transactionId + 1, conflictGraph.length * 2));
+    }
+    BitSet waitsFor = conflictGraph[transactionId];
+    if (waitsFor == null) {
+      waitsFor = new BitSet();
+      conflictGraph[transactionId] = waitsFor;
+      conflictGraphNodes.set(transactionId);
+    }
+    return waitsFor;
+  }
+
   /**
    * Gives the state of each DM and the TM as well as the data distribution and data values.
    */
   public void querystate() {
-    for (String transactionId : transactions.keySet()) {
-      System.out.println(transactions.get(transactionId).toString());
+    for (Transaction transaction : transactions) {
+      if (transaction != null) {
+        events.message(transaction.toString());
+      }
     }
-    System.out.println("Site Manger lock table: ");
+    events.message("Site Manger lock table: ");
     for (Site site : siteManager.getSites()) {
-      System.out.println(site.getLockTable().toString());
+      events.message(site.getLockTable().toString());
+    }
+  }
+
+  /**
+   * Gets the low-water mark of the snapshots: the start time of the oldest transaction reading a snapshot which has
+   * not ended yet, read-only or, with SNAPSHOT protocol, any. No transaction reads a version older than the newest
+   * version committed before it began, so the versions older than that can be removed.
+   *
+   * @param time The current time, the mark if no read-only transaction is running
+   * @return The low-water mark
+   */
+  int getLowWaterMark(int time) {
+    int mark = time;
+    for (int id = snapshots.nextSetBit(0); id >= 0; id = snapshots.nextSetBit(id + 1)) {
+      mark = Math.min(mark, transactions[id].getTime());
+    }
+    return mark;
+  }
+
+  /**
+   * Aborts the transaction with given handle if it has not ended yet, e.g. the transaction of a client which
+   * disconnected, releasing its locks and resuming the transactions waiting for them.
+   *
+   * @param transactionId The handle of transaction
+   */
+  void abortRunning(int transactionId) {
+    Transaction transaction = getTransaction(transactionId);
+    if (transaction == null || transaction.getStatus() == Transaction.Status.COMMITTED
+            || transaction.getStatus() == Transaction.Status.ABORTED) {
+      return;
+    }
+    events.accept(EventSink.Event.ABORT, transactionId, EventSink.NO_ID, 0, 0);
+    abortTransaction(transactionId, true);
+  }
+
+  /**
+   * Passes every value word which is not an int still held by the running transactions and by the sites to given
+   * action, e.g. to mark the values of a ValueTable which a sweep must keep. The values of transactions which ended
+   * are not passed.
+   *
+   * @param action The action taking each value word, called on the threads of the sites with PARALLEL or ACTOR fan
+   *               out
+   */
+  void forEachValue(LongConsumer action) {
+    for (Transaction transaction : transactions) {
+      if (transaction != null && (transaction.getStatus() == Transaction.Status.RUNNING
+              || transaction.getStatus() == Transaction.Status.WAITING)) {
+        transaction.forEachValue(action);
+      }
+    }
+    siteManager.forEachValue(action);
+  }
+
+  private Transaction getTransaction(int transactionId) {
+    return transactionId >= 0 && transactionId < transactions.length ? transactions[transactionId] : null;
+  }
+
+  private BitSet waitsFor(int transactionId) {
+    return transactionId >= 0 && transactionId < conflictGraph.length ? conflictGraph[transactionId] : null;
+  }
+
+  private boolean isWaiting(int transactionId) {
+    for (int i = 0; i < waitingCount; i++) {
+      if (waitingList[i] == transactionId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addWaiting(int transactionId) {
+    if (waitingCount == waitingList.length) {
+      waitingList = Arrays.copyOf(waitingList, waitingCount * 2);
+    }
+    waitingList[waitingCount++] = transactionId;
+  }
+
+  private void removeWaiting(int transactionId) {
+    for (int i = 0; i < waitingCount; i++) {
+      if (waitingList[i] == transactionId) {
+        System.arraycopy(waitingList, i + 1, waitingList, i, waitingCount - i - 1);
+        waitingCount--;
+        return;
+      }
     }
   }
 }
@@ -0,0 +1,251 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class defines the typed values of variables and their compact encoding. A value is passed around as a long
+ * value word, so that no value is boxed:
+ * <ul>
+ * <li>an int value is its own word, sign extended, so that every int is a valid word;</li>
+ * <li>any other value is interned into a {@link ValueTable} and its word holds the type in the high half and the
+ * handle of the table in the low half.</li>
+ * </ul>
+ * Stores keep the low half of a word as an int and its type as a tag, where tag 0 is an int, so that copies holding
+ * only ints need no tags at all.
+ * <p>
+ * An interned value is encoded as its tag followed by its payload: a long as a zigzag varint, a double as the 8 bytes
+ * of its bits, and a string or a blob as a varint length followed by the UTF-8 bytes or the raw bytes.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see ValueTable
+ */
+final class Value {
+  /**
+   * Enum types of value. The ordinal is the tag of the type, so new types must only be added at its end.
+   */
+  enum Type {
+    INT, LONG, DOUBLE, STRING, BLOB
+  }
+
+  private static final Type[] TYPES = Type.values();
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private Value() {
+  }
+
+  /**
+   * Checks if given word is an int value.
+   *
+   * @param word The value word
+   * @return true if the word is an int
+   */
+  static boolean isInt(long word) {
+    return word == (int) word;
+  }
+
+  /**
+   * Gets the tag of the type of given word, 0 for an int.
+   *
+   * @param word The value word
+   * @return The tag
+   */
+  static int tag(long word) {
+    return isInt(word) ? 0 : (int) (word >>> 32);
+  }
+
+  /**
+   * Gets the type of given word.
+   *
+   * @param word The value word
+   * @return The type
+   */
+  static Type type(long word) {
+    return TYPES[tag(word)];
+  }
+
+  /**
+   * Gets the word of given tag and low half, as kept by a store.
+   *
+   * @param tag     The tag of the type, 0 for an int
+   * @param payload The int value, or the handle of an interned value
+   * @return The value word
+   */
+  static long word(int tag, int payload) {
+    return tag == 0 ? payload : (long) tag << 32 | payload & 0xFFFFFFFFL;
+  }
+
+  /**
+   * Encodes a long value into given buffer.
+   *
+   * @param value  The value
+   * @param buffer The buffer, with room for 11 bytes
+   * @param offset The index to encode at
+   * @return The index after the encoded value
+   */
+  static int encodeLong(long value, byte[] buffer, int offset) {
+    buffer[offset++] = (byte) Type.LONG.ordinal();
+    return putVarLong(value << 1 ^ value >> 63, buffer, offset);
+  }
+
+  /**
+   * Encodes a double value into given buffer.
+   *
+   * @param value  The value
+   * @param buffer The buffer, with room for 9 bytes
+   * @param offset The index to encode at
+   * @return The index after the encoded value
+   */
+  static int encodeDouble(double value, byte[] buffer, int offset) {
+    buffer[offset++] = (byte) Type.DOUBLE.ordinal();
+    long bits = Double.doubleToRawLongBits(value);
+    for (int i = 0; i < Long.BYTES; i++) {
+      buffer[offset++] = (byte) (bits >>> i * 8);
+    }
+    return offset;
+  }
+
+  /**
+   * Encodes a string or a blob of given length into given buffer, without its bytes. The bytes follow at the index
+   * returned.
+   *
+   * @param type   The type, STRING or BLOB
+   * @param length The number of bytes
+   * @param buffer The buffer, with room for 6 bytes
+   * @param offset The index to encode at
+   * @return The index of the first byte
+   * @throws IllegalArgumentException if type is not STRING or BLOB
+   */
+  static int encodeBytesHeader(Type type, int length, byte[] buffer, int offset) {
+    if (type != Type.STRING && type != Type.BLOB) {
+      throw new IllegalArgumentException("not a variable-length type: " + type);
+    }
+    buffer[offset++] = (byte) type.ordinal();
+    return putVarLong(length, buffer, offset);
+  }
+
+  /**
+   * Gets the number of bytes of the encoded value at given index.
+   *
+   * @param buffer The buffer holding the encoded value
+   * @param offset The index of the encoded value
+   * @return The number of bytes
+   */
+  static int length(byte[] buffer, int offset) {
+    int position = offset + 1;
+    switch (TYPES[buffer[offset]]) {
+      case LONG:
+        while (buffer[position++] < 0) {
+          // a varint continues while the high bit is set
+        }
+        return position - offset;
+      case DOUBLE:
+        return 1 + Long.BYTES;
+      default:
+        long length = 0;
+        for (int shift = 0; ; shift += 7) {
+          byte b = buffer[position++];
+          length |= (long) (b & 0x7F) << shift;
+          if (b >= 0) {
+            break;
+          }
+        }
+        return (int) (position - offset + length);
+    }
+  }
+
+  /**
+   * Decodes the encoded long value at given index.
+   *
+   * @param buffer The buffer holding the encoded value
+   * @param offset The index of the encoded value
+   * @return The value
+   */
+  static long decodeLong(byte[] buffer, int offset) {
+    long zigzag = getVarLong(buffer, offset + 1);
+    return zigzag >>> 1 ^ -(zigzag & 1);
+  }
+
+  /**
+   * Decodes the encoded double value at given index.
+   *
+   * @param buffer The buffer holding the encoded value
+   * @param offset The index of the encoded value
+   * @return The value
+   */
+  static double decodeDouble(byte[] buffer, int offset) {
+    long bits = 0;
+    for (int i = 0; i < Long.BYTES; i++) {
+      bits |= (buffer[offset + 1 + i] & 0xFFL) << i * 8;
+    }
+    return Double.longBitsToDouble(bits);
+  }
+
+  /**
+   * Decodes the bytes of the encoded string or blob at given index, the UTF-8 bytes of a string.
+   *
+   * @param buffer The buffer holding the encoded value
+   * @param offset The index of the encoded value
+   * @return A copy of the bytes
+   */
+  static byte[] decodeBytes(byte[] buffer, int offset) {
+    int length = (int) getVarLong(buffer, offset + 1);
+    int end = offset + length(buffer, offset);
+    return Arrays.copyOfRange(buffer, end - length, end);
+  }
+
+  /**
+   * Renders the encoded value at given index in the form of the input grammar: a long with suffix L, a double with a
+   * decimal point or exponent, a string in double quotes and a blob as 0x followed by hex digits.
+   *
+   * @param buffer The buffer holding the encoded value
+   * @param offset The index of the encoded value
+   * @return The rendered value
+   */
+  static String toString(byte[] buffer, int offset) {
+    switch (TYPES[buffer[offset]]) {
+      case LONG:
+        return decodeLong(buffer, offset) + "L";
+      case DOUBLE:
+        return Double.toString(decodeDouble(buffer, offset));
+      default: {
+        byte[] bytes = decodeBytes(buffer, offset);
+        StringBuilder text = new StringBuilder(bytes.length + 2);
+        if (buffer[offset] == Type.STRING.ordinal()) {
+          text.append('"');
+          for (char c : new String(bytes, StandardCharsets.UTF_8).toCharArray()) {
+            if (c == '"' || c == '\\') {
+              text.append('\\');
+            }
+            text.append(c);
+          }
+          return text.append('"').toString();
+        }
+        text.append("0x");
+        for (byte b : bytes) {
+          text.append(HEX[b >> 4 & 0xF]).append(HEX[b & 0xF]);
+        }
+        return text.toString();
+      }
+    }
+  }
+
+  private static long getVarLong(byte[] buffer, int offset) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = buffer[offset++];
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  private static int putVarLong(long value, byte[] buffer, int offset) {
+    while ((value & ~0x7FL) != 0) {
+      buffer[offset++] = (byte) (value & 0x7F | 0x80);
+      value >>>= 7;
+    }
+    buffer[offset++] = (byte) value;
+    return offset;
+  }
+}
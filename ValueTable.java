@@ -0,0 +1,272 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This class interns the encoded values which are not ints into dense integer handles, so that a value word only
+ * holds the type and the handle of its value. The encoded values are appended to one byte array, and a value which
+ * was already seen is looked up directly from its bytes without allocating.
+ * <p>
+ * A value only lives as long as something holds its word. The owner of the table sweeps it once the number of values
+ * doubled since the last sweep: it marks the words every holder still keeps, e.g. the stores and the transactions of
+ * a TransactionManager, and the sweep frees the handles of the other values for reuse and compacts their bytes away.
+ * A value interned since the last sweep is kept by the next one as well, so that a word handed over by another
+ * thread while the holders are marked is not freed.
+ * <p>
+ * Values are interned, marked and rendered by different threads, e.g. a reader stage and an event writer, so every
+ * method which touches the values holds the lock of the table.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Value
+ * @see SymbolTable
+ */
+class ValueTable {
+  private static final int MIN_SWEEP = 1024;
+
+  private int[] slots;
+  private byte[] data;
+  private int[] offsets;
+  private int[] lengths;
+  private int[] hashes;
+  private int[] free;
+  private int freeCount;
+  private int limit;
+  private int size;
+  private int end;
+  private int garbage;
+  private final BitSet marked = new BitSet();
+  private final BitSet touched = new BitSet();
+  private int sweepAt = MIN_SWEEP;
+  private volatile boolean sweepDue;
+
+  /**
+   * Constructor for an empty value table.
+   */
+  ValueTable() {
+    slots = new int[64];
+    Arrays.fill(slots, -1);
+    data = new byte[256];
+    offsets = new int[16];
+    lengths = new int[16];
+    hashes = new int[16];
+    free = new int[16];
+  }
+
+  /**
+   * Interns the encoded value stored at given index.
+   *
+   * @param buffer The buffer holding the encoded value
+   * @param from   The index of the encoded value
+   * @return The value word
+   */
+  synchronized long intern(byte[] buffer, int from) {
+    int to = from + Value.length(buffer, from);
+    int hash = hash(buffer, from, to);
+    int mask = slots.length - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int handle = slots[slot];
+      if (handle < 0) {
+        handle = add(buffer, from, to, hash, slot);
+        touched.set(handle);
+        return Value.word(buffer[from], handle);
+      }
+      if (hashes[handle] == hash && matches(handle, buffer, from, to)) {
+        touched.set(handle);
+        return Value.word(buffer[from], handle);
+      }
+    }
+  }
+
+  /**
+   * Renders given value word in the form of the input grammar.
+   *
+   * @param word The value word
+   * @return The rendered value
+   */
+  String toString(long word) {
+    if (Value.isInt(word)) {
+      return Integer.toString((int) word);
+    }
+    synchronized (this) {
+      return Value.toString(data, offsets[(int) word]);
+    }
+  }
+
+  /**
+   * Gets the encoded value of given handle.
+   *
+   * @param handle The handle of the value
+   * @return A copy of the encoded value
+   */
+  synchronized byte[] encoded(int handle) {
+    return Arrays.copyOfRange(data, offsets[handle], offsets[handle] + lengths[handle]);
+  }
+
+  /**
+   * Gets the number of handles given out, which is the number of interned values as long as the table was never
+   * swept.
+   *
+   * @return The largest handle plus one
+   */
+  synchronized int size() {
+    return limit;
+  }
+
+  /**
+   * Checks if enough values were interned since the last sweep that the owner should sweep the table.
+   *
+   * @return true if a sweep is due
+   */
+  boolean isSweepDue() {
+    return sweepDue;
+  }
+
+  /**
+   * Marks the value of given word as held, so that the next sweep keeps it. An int is not interned and ignored.
+   *
+   * @param word The value word
+   */
+  void mark(long word) {
+    if (Value.isInt(word)) {
+      return;
+    }
+    synchronized (this) {
+      marked.set((int) word);
+    }
+  }
+
+  /**
+   * Frees every value which was neither marked nor interned since the last sweep, and compacts the bytes of the
+   * values once at least half of them were freed.
+   *
+   * @return The number of values freed
+   */
+  synchronized int sweep() {
+    int freed = 0;
+    for (int handle = 0; handle < limit; handle++) {
+      if (offsets[handle] >= 0 && !marked.get(handle) && !touched.get(handle)) {
+        remove(handle);
+        freed++;
+      }
+    }
+    marked.clear();
+    touched.clear();
+    if (garbage * 2 > end) {
+      compact();
+    }
+    sweepAt = Math.max(MIN_SWEEP, size * 2);
+    sweepDue = false;
+    return freed;
+  }
+
+  private int add(byte[] buffer, int from, int to, int hash, int slot) {
+    int length = to - from;
+    if (end + length > data.length) {
+      data = Arrays.copyOf(data, Math.max(end + length, data.length * 2));
+    }
+    System.arraycopy(buffer, from, data, end, length);
+    int handle;
+    if (freeCount > 0) {
+      handle = free[--freeCount];
+    } else {
+      if (limit == offsets.length) {
+        offsets = Arrays.copyOf(offsets, limit * 2);
+        lengths = Arrays.copyOf(lengths, limit * 2);
+        hashes = Arrays.copyOf(hashes, limit * 2);
+      }
+      handle = limit++;
+    }
+    offsets[handle] = end;
+    lengths[handle] = length;
+    hashes[handle] = hash;
+    end += length;
+    slots[slot] = handle;
+    if (++size * 2 > slots.length) {
+      rehash();
+    }
+    if (size >= sweepAt) {
+      sweepDue = true;
+    }
+    return handle;
+  }
+
+  /**
+   * Removes the value of given handle from the slots, shifting back the values probed past it, and frees the
+   * handle.
+   */
+  private void remove(int handle) {
+    int mask = slots.length - 1;
+    int slot = hashes[handle] & mask;
+    while (slots[slot] != handle) {
+      slot = (slot + 1) & mask;
+    }
+    for (int next = (slot + 1) & mask; slots[next] >= 0; next = (next + 1) & mask) {
+      int home = hashes[slots[next]] & mask;
+      // a value may move back unless its home slot lies between the hole and itself
+      if (((next - home) & mask) >= ((next - slot) & mask)) {
+        slots[slot] = slots[next];
+        slot = next;
+      }
+    }
+    slots[slot] = -1;
+    garbage += lengths[handle];
+    offsets[handle] = -1;
+    if (freeCount == free.length) {
+      free = Arrays.copyOf(free, freeCount * 2);
+    }
+    free[freeCount++] = handle;
+    size--;
+  }
+
+  private void compact() {
+    byte[] bytes = new byte[Math.max(256, (end - garbage) * 2)];
+    int next = 0;
+    for (int handle = 0; handle < limit; handle++) {
+      if (offsets[handle] >= 0) {
+        System.arraycopy(data, offsets[handle], bytes, next, lengths[handle]);
+        offsets[handle] = next;
+        next += lengths[handle];
+      }
+    }
+    data = bytes;
+    end = next;
+    garbage = 0;
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    Arrays.fill(slots, -1);
+    int mask = slots.length - 1;
+    for (int handle = 0; handle < limit; handle++) {
+      if (offsets[handle] < 0) {
+        continue;
+      }
+      int slot = hashes[handle] & mask;
+      while (slots[slot] >= 0) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = handle;
+    }
+  }
+
+  private boolean matches(int handle, byte[] buffer, int from, int to) {
+    int start = offsets[handle];
+    if (lengths[handle] != to - from) {
+      return false;
+    }
+    for (int i = 0; i < to - from; i++) {
+      if (data[start + i] != buffer[from + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hash(byte[] buffer, int from, int to) {
+    int hash = 0x811c9dc5;
+    for (int i = from; i < to; i++) {
+      hash = (hash ^ buffer[i]) * 0x01000193;
+    }
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -1,179 +1,190 @@
-import java.util.*;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.LongConsumer;
 
 /**
- * This class represents data items on each site.
+ * This class represents the committed versions of one copy of a data item. A site only creates it once the copy is
+ * committed for the first time, until then the initial value is the only version.
+ * <p>
+ * The versions are kept as a chain in order of their commit time, in two parallel arrays of times and values, so
+ * that committing a version appends it and reading the version at a time is a binary search without allocation.
+ * Versions which no snapshot can read any more are pruned from the front of the chain.
+ * <p>
+ * The values are the low halves of the value words, see {@link Value}. The tags of their types are kept in a third
+ * parallel array which is only created once a value which is not an int is committed, so a chain of ints costs no
+ * more than before.
  *
  * @author Hyung Jin Cho
  * @version 12/07/2018
+ * @see Site
  */
 class Variable {
-  private final String variableId;
-  private int value;
-  private final Map<Integer, Integer> previousValue = new HashMap<>();
-  private int lastCommittedValue;
-  private boolean isReadable;
-  private boolean isWritable;
+  private int[] times;
+  private int[] values;
+  private byte[] types;
+  private int size;
 
 
   /**
-   * Variable constructor with given variable id.
+   * Variable constructor with given initial value, committed at time 0.
    *
-   * @param variableId The id of Variable object
+   * @param value The value word of the initial value of the copy
    * @return This variable
-   * @throws NullPointerException if variableId is null.
    */
-  Variable(String variableId) {
-    this.variableId = variableId;
-    this.value = initializeValue(variableId);
-    this.previousValue.put(0, value);
-    this.lastCommittedValue = value;
-    this.isReadable = true;
+  Variable(long value) {
+    this.times = new int[4];
+    this.values = new int[4];
+    set(0, value);
+    this.size = 1;
   }
 
   /**
-   * Initializes the value of variable.
+   * Variable constructor copying every committed version of another copy.
    *
-   * @param variableId The id of variable object
-   * @return The value of the variable object
-   * @throws NullPointerException if variableId is null.
-   */
-  private int initializeValue(String variableId) {
-    String temp = Objects.requireNonNull(variableId).replace("x", "");
-    int id = Integer.valueOf(temp);
-    return id * 10;
-  }
-
-  /**
-   * Gets the value of variable.
-   *
-   * @return The value of variable
+   * @param other The copy to copy the versions of
+   * @return This variable
+   * @throws NullPointerException if other is null
    */
-  int getValue() {
-    return this.value;
+  Variable(Variable other) {
+    Objects.requireNonNull(other, "other must not be null.");
+    this.times = Arrays.copyOf(other.times, other.size);
+    this.values = Arrays.copyOf(other.values, other.size);
+    this.types = other.types == null ? null : Arrays.copyOf(other.types, other.size);
+    this.size = other.size;
   }
 
   /**
-   * Read the last committed value before the given timestamp, for Read-Only transaction.
+   * Read the last committed value before the given timestamp, for Read-Only transaction. If no version was
+   * committed before the timestamp, it reads the first version.
    *
    * @param time the given transaction timestamp
-   * @return last committed value before the timestamp
+   * @return The value word of the last committed value before the timestamp
    */
-  int readOnly(int time) {
-    List<Integer> previousValueTimes = new ArrayList<>(previousValue.keySet());
-    int size = previousValueTimes.size();
-    Collections.sort(previousValueTimes);
-    if (time > previousValueTimes.get(previousValueTimes.size() - 1)) {
-      return previousValue.get(previousValueTimes.get(size - 1));
-    } else {
-      int low = 0;
-      int high = size - 1;
-      int mid;
-      if (high - low <= 1) {
-        return previousValue.get(previousValueTimes.get(low));
-      }
-      mid = low + ((high - low) / 2);
-      int temp = previousValueTimes.get(mid);
-      if (temp >= time) {
-        high = mid;
-      } else {
-        low = mid;
-      }
-      while (high - low > 1) {
-        mid = low + ((high - low) / 2);
-        temp = previousValueTimes.get(mid);
-        if (temp >= time) {
-          high = mid;
-        } else {
-          low = mid;
-        }
-      }
-      return previousValue.get(previousValueTimes.get(low));
+  long readOnly(int time) {
+    if (time > times[size - 1]) {
+      return get(size - 1);
     }
+    int i = Arrays.binarySearch(times, 0, size, time);
+    // the version committed right before the timestamp, whether or not one was committed at the timestamp
+    i = i >= 0 ? i - 1 : -i - 2;
+    return get(Math.max(i, 0));
   }
 
 
   /**
-   * Commits the value of variable for commit operation.
+   * Commits the value of variable for commit operation. A value committed at the time of the last version replaces
+   * it.
    *
-   * @param time The time of variable when commit
-   * @throws NullPointerException if time is null.
+   * @param time  The time of variable when commit
+   * @param value The value word of the committed value
    */
-  void commitValue(int time) {
-    this.previousValue.put(time, value);
-    this.lastCommittedValue = value;
+  void commitValue(int time, long value) {
+    if (time > times[size - 1]) {
+      if (size == times.length) {
+        grow();
+      }
+      times[size] = time;
+      set(size, value);
+      size++;
+      return;
+    }
+    int i = Arrays.binarySearch(times, 0, size, time);
+    if (i >= 0) {
+      set(i, value);
+      return;
+    }
+    // a version committed out of order is inserted at its place in the chain
+    i = -i - 1;
+    if (size == times.length) {
+      grow();
+    }
+    System.arraycopy(times, i, times, i + 1, size - i);
+    System.arraycopy(values, i, values, i + 1, size - i);
+    if (types != null) {
+      System.arraycopy(types, i, types, i + 1, size - i);
+    }
+    times[i] = time;
+    set(i, value);
+    size++;
   }
 
-
   /**
-   * Writes the value of variable for write operation.
+   * Removes the versions older than the newest version committed before given time, which no read at or after that
+   * time can read.
    *
-   * @param value The value of variable
-   * @throws NullPointerException if value is null.
-   */
-  void writeValue(int value) {
-    this.value = value;
-  }
-
-
-  /**
-   * When a transaction is aborted, it recovers value from the last committed value.
+   * @param horizon The time of the oldest snapshot which may still be read
+   * @return The number of versions removed
    */
-  void recoverValue() {
-    this.value = lastCommittedValue;
+  int prune(int horizon) {
+    if (size < 2 || times[1] >= horizon) {
+      return 0;
+    }
+    int i = Arrays.binarySearch(times, 0, size, horizon);
+    // the newest version committed before the horizon is kept
+    i = i >= 0 ? i - 1 : -i - 2;
+    System.arraycopy(times, i, times, 0, size - i);
+    System.arraycopy(values, i, values, 0, size - i);
+    if (types != null) {
+      System.arraycopy(types, i, types, 0, size - i);
+    }
+    size -= i;
+    return i;
   }
 
   /**
-   * Gets the last committed value of variable for abort operation.
+   * Gets the time of the last committed version.
    *
-   * @return The last committed value of variable
+   * @return The time of commit
    */
-  int getLastCommittedValue() {
-    return this.lastCommittedValue;
+  int getCommitTime() {
+    return times[size - 1];
   }
 
   /**
-   * Gets the variable id.
+   * Gets the number of versions kept.
    *
-   * @return The variable id
+   * @return The number of versions
    */
-  String getVariableId() {
-    return variableId;
+  int getVersionCount() {
+    return size;
   }
 
   /**
-   * Check if the variable can be read for Site recovery period
+   * Passes the value word of every version which is not an int to given action.
    *
-   * @return true if the variable is allowed to read, false otherwise
+   * @param action The action taking each value word
    */
-  boolean getIsReadable() {
-    return isReadable;
+  void forEachValue(LongConsumer action) {
+    if (types == null) {
+      return;
+    }
+    for (int i = 0; i < size; i++) {
+      if (types[i] != 0) {
+        action.accept(get(i));
+      }
+    }
   }
 
-  /**
-   * Sets boolean isReadable.
-   *
-   * @return true if variable can be read
-   */
-  void setIsReadable(boolean isReadable) {
-    this.isReadable = isReadable;
+  private long get(int i) {
+    return Value.word(types == null ? 0 : types[i], values[i]);
   }
 
-
-  /**
-   * Check if the variable can be written.
-   *
-   * @return true if the variable can be written, false otherwise
-   */
-  public boolean getIsWritable() {
-    return isWritable;
+  private void set(int i, long value) {
+    int tag = Value.tag(value);
+    if (tag != 0 && types == null) {
+      types = new byte[times.length];
+    }
+    values[i] = (int) value;
+    if (types != null) {
+      types[i] = (byte) tag;
+    }
   }
 
-  /**
-   * Sets boolean isWritable
-   *
-   * @return true if variable can be written
-   */
-  public void setIsWritable(boolean isWritable) {
-    isWritable = isWritable;
+  private void grow() {
+    times = Arrays.copyOf(times, size * 2);
+    values = Arrays.copyOf(values, size * 2);
+    if (types != null) {
+      types = Arrays.copyOf(types, size * 2);
+    }
   }
 }
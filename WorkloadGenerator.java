@@ -0,0 +1,408 @@
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * This class generates a synthetic workload and drives TransactionManager directly with it, without any input file.
+ * It keeps a fixed number of transactions open, issues their reads and writes interleaved one per time, injects
+ * site failures, and reports throughput, abort rate and the latency of each kind of operation.
+ * <p>
+ * Every setting is given as key=value argument, e.g. {@code java WorkloadGenerator transactions=100000 zipf=0.99}.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see TransactionManager
+ */
+class WorkloadGenerator {
+  /**
+   * Enum operations measured by the generator
+   */
+  enum Op {
+    BEGIN, READ, WRITE, END, FAIL, RECOVER
+  }
+
+  private static final double REBALANCE_TOLERANCE = 0.2;
+  private static final int REBALANCE_MOVES = 4;
+
+  private final Config config;
+  private final Random random;
+  private final ZipfGenerator keys;
+  private final Histogram[] latencies = new Histogram[Op.values().length];
+  private final TransactionManager tm;
+  private int time = 1;
+  private int nextTransaction = 1;
+  private long commits;
+  private long aborts;
+  private long blocked;
+  private final Rebalancer rebalancer;
+
+  /**
+   * Constructor for generator with given settings.
+   *
+   * @param config The settings of the workload
+   * @throws NullPointerException if config is null
+   */
+  WorkloadGenerator(Config config) {
+    this.config = Objects.requireNonNull(config, "config must not be null.");
+    this.random = new Random(config.seed);
+    this.keys = new ZipfGenerator(config.cluster.variables, config.zipf, random);
+    for (int i = 0; i < latencies.length; i++) {
+      latencies[i] = new Histogram();
+    }
+    this.tm = new TransactionManager(() -> time, config.cluster, EventSink.NONE);
+    this.rebalancer = new Rebalancer(tm.siteManager, REBALANCE_TOLERANCE, REBALANCE_MOVES);
+  }
+
+  public static void main(String[] args) {
+    Config config;
+    try {
+      config = Config.parse(args);
+    } catch (IllegalArgumentException e) {
+      System.out.println("Error: " + e.getMessage());
+      System.out.println("Usage: java WorkloadGenerator [key=value ...]");
+      System.out.println("Keys: " + Config.KEYS);
+      System.exit(1);
+      return;
+    }
+    WorkloadGenerator generator = new WorkloadGenerator(config);
+    long elapsed = generator.run();
+    generator.report(System.out, elapsed);
+  }
+
+  /**
+   * Runs the whole workload.
+   *
+   * @return The elapsed time in nanoseconds
+   */
+  long run() {
+    int[] active = new int[config.concurrency];
+    Arrays.fill(active, EventSink.NO_ID);
+    int[] remaining = new int[config.concurrency];
+    boolean[] readOnly = new boolean[config.concurrency];
+    int[] recoverAt = new int[config.cluster.sites + 1];
+    int started = 0;
+    int open = 0;
+    long start = System.nanoTime();
+
+    while (started < config.transactions || open > 0) {
+      int slot = random.nextInt(config.concurrency);
+      if (active[slot] == EventSink.NO_ID) {
+        if (started < config.transactions) {
+          readOnly[slot] = random.nextDouble() < config.readOnly;
+          active[slot] = begin(readOnly[slot]);
+          remaining[slot] = config.length;
+          started++;
+          open++;
+        }
+      } else if (remaining[slot] == 0) {
+        end(active[slot]);
+        active[slot] = EventSink.NO_ID;
+        open--;
+      } else {
+        int variableId = 1 + keys.next();
+        if (readOnly[slot] || random.nextDouble() < config.readRatio) {
+          long t = System.nanoTime();
+          tm.readRequest(active[slot], variableId);
+          latencies[Op.READ.ordinal()].record(System.nanoTime() - t);
+        } else {
+          long t = System.nanoTime();
+          tm.writeRequest(active[slot], variableId, random.nextInt(1000));
+          latencies[Op.WRITE.ordinal()].record(System.nanoTime() - t);
+        }
+        remaining[slot]--;
+      }
+      injectFailures(recoverAt);
+      if (config.rebalanceEvery > 0 && time % config.rebalanceEvery == 0) {
+        rebalancer.rebalance();
+      }
+      time++;
+    }
+    return System.nanoTime() - start;
+  }
+
+  private int begin(boolean readOnly) {
+    int transactionId = nextTransaction++;
+    long t = System.nanoTime();
+    tm.beginTransaction(transactionId, time, readOnly);
+    latencies[Op.BEGIN.ordinal()].record(System.nanoTime() - t);
+    return transactionId;
+  }
+
+  private void end(int transactionId) {
+    long t = System.nanoTime();
+    tm.endTransaction(transactionId, time);
+    latencies[Op.END.ordinal()].record(System.nanoTime() - t);
+    Transaction.Status status = tm.getTransactionStatus(transactionId);
+    if (status == Transaction.Status.COMMITTED) {
+      commits++;
+    } else if (status == Transaction.Status.ABORTED) {
+      aborts++;
+    } else {
+      blocked++;
+    }
+  }
+
+  private void injectFailures(int[] recoverAt) {
+    for (int siteId = 1; siteId <= config.cluster.sites; siteId++) {
+      if (recoverAt[siteId] == time) {
+        long t = System.nanoTime();
+        tm.recoverSite(siteId);
+        latencies[Op.RECOVER.ordinal()].record(System.nanoTime() - t);
+        recoverAt[siteId] = 0;
+      }
+    }
+    if (config.failureRate > 0 && random.nextDouble() < config.failureRate) {
+      int siteId = 1 + random.nextInt(config.cluster.sites);
+      if (recoverAt[siteId] == 0) {
+        long t = System.nanoTime();
+        tm.failSite(siteId, time);
+        latencies[Op.FAIL.ordinal()].record(System.nanoTime() - t);
+        recoverAt[siteId] = time + config.downtime;
+      }
+    }
+  }
+
+  /**
+   * Prints the result of the workload.
+   *
+   * @param out     The stream to print to
+   * @param elapsed The elapsed time in nanoseconds
+   */
+  void report(PrintStream out, long elapsed) {
+    double seconds = elapsed / 1e9;
+    long ended = commits + aborts + blocked;
+    out.println(">>>> Workload: " + config);
+    out.printf("elapsed: %.3f s, ticks: %d%n", seconds, time - 1);
+    out.printf("commits: %d (%.1f commits/sec), aborts: %d (abort rate %.2f%%), still waiting at end: %d%n",
+            commits, commits / seconds, aborts, ended == 0 ? 0.0 : 100.0 * aborts / ended, blocked);
+    out.printf("%-8s %10s %10s %10s %10s %10s %10s%n", "op", "count", "mean(us)", "p50(us)", "p99(us)",
+            "p99.9(us)", "max(us)");
+    for (Op op : Op.values()) {
+      Histogram histogram = latencies[op.ordinal()];
+      if (histogram.count == 0) {
+        continue;
+      }
+      out.printf("%-8s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", op, histogram.count,
+              histogram.mean() / 1e3, histogram.percentile(0.5) / 1e3, histogram.percentile(0.99) / 1e3,
+              histogram.percentile(0.999) / 1e3, histogram.max / 1e3);
+    }
+    StringBuilder reads = new StringBuilder("reads per site:");
+    for (Site site : tm.siteManager.getSites()) {
+      reads.append(' ').append(site.getSiteId()).append('=').append(site.getReadCount());
+    }
+    out.println(reads);
+    out.println("versions retained: " + tm.siteManager.getVersionCount() + ", reclaimed: "
+            + tm.siteManager.getReclaimedVersionCount());
+    if (config.rebalanceEvery > 0) {
+      out.println("variables migrated: " + rebalancer.getMoves());
+    }
+  }
+
+  /**
+   * Settings of a generated workload.
+   */
+  static final class Config {
+    static final String KEYS = "transactions, concurrency, length, readRatio, readOnly, zipf, failureRate, "
+            + "downtime, seed, rebalanceEvery, " + SiteManager.Config.KEYS;
+
+    int transactions = 10_000;
+    int concurrency = 8;
+    int length = 4;
+    double readRatio = 0.8;
+    double readOnly = 0.1;
+    double zipf = 0.99;
+    double failureRate = 0.0;
+    int downtime = 50;
+    long seed = 42;
+    int rebalanceEvery = 0;
+    final SiteManager.Config cluster = new SiteManager.Config();
+
+    /**
+     * Parses settings from key=value arguments. Missing keys keep their default.
+     *
+     * @param args The key=value arguments
+     * @return The settings
+     * @throws IllegalArgumentException if an argument is unknown or out of range
+     */
+    static Config parse(String[] args) {
+      Config config = new Config();
+      for (String arg : args) {
+        int split = arg.indexOf('=');
+        if (split < 0) {
+          throw new IllegalArgumentException("argument must be key=value: " + arg);
+        }
+        String key = arg.substring(0, split);
+        String value = arg.substring(split + 1);
+        try {
+          switch (key) {
+            case "transactions":
+              config.transactions = Integer.parseInt(value);
+              break;
+            case "concurrency":
+              config.concurrency = Integer.parseInt(value);
+              break;
+            case "length":
+              config.length = Integer.parseInt(value);
+              break;
+            case "readRatio":
+              config.readRatio = Double.parseDouble(value);
+              break;
+            case "readOnly":
+              config.readOnly = Double.parseDouble(value);
+              break;
+            case "zipf":
+              config.zipf = Double.parseDouble(value);
+              break;
+            case "failureRate":
+              config.failureRate = Double.parseDouble(value);
+              break;
+            case "downtime":
+              config.downtime = Integer.parseInt(value);
+              break;
+            case "seed":
+              config.seed = Long.parseLong(value);
+              break;
+            case "rebalanceEvery":
+              config.rebalanceEvery = Integer.parseInt(value);
+              break;
+            default:
+              if (!config.cluster.set(key, value)) {
+                throw new IllegalArgumentException("unknown key: " + key);
+              }
+          }
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("invalid value for " + key + ": " + value);
+        }
+      }
+      if (config.transactions < 0 || config.concurrency < 1 || config.length < 0 || config.downtime < 1
+              || config.rebalanceEvery < 0) {
+        throw new IllegalArgumentException("transactions, length, rebalanceEvery must not be negative, concurrency "
+                + "and downtime must be positive.");
+      }
+      if (!isRatio(config.readRatio) || !isRatio(config.readOnly) || !isRatio(config.failureRate)
+              || config.zipf < 0) {
+        throw new IllegalArgumentException("readRatio, readOnly, failureRate must be in [0, 1], zipf must not be "
+                + "negative.");
+      }
+      config.cluster.validate();
+      return config;
+    }
+
+    private static boolean isRatio(double value) {
+      return value >= 0 && value <= 1;
+    }
+
+    @Override
+    public String toString() {
+      return "transactions=" + transactions + " concurrency=" + concurrency + " length=" + length + " readRatio="
+              + readRatio + " readOnly=" + readOnly + " zipf=" + zipf + " failureRate=" + failureRate + " downtime="
+              + downtime + " seed=" + seed + " rebalanceEvery=" + rebalanceEvery + " " + cluster;
+    }
+  }
+
+  /**
+   * Draws keys in [0, n) following a Zipfian distribution, key 0 being the hottest. A skew of 0 is uniform.
+   */
+  static final class ZipfGenerator {
+    private final double[] cumulative;
+    private final Random random;
+
+    /**
+     * Constructor for generator of n keys with given skew.
+     *
+     * @param n      The number of keys
+     * @param skew   The Zipfian exponent
+     * @param random The source of randomness
+     */
+    ZipfGenerator(int n, double skew, Random random) {
+      this.random = random;
+      this.cumulative = new double[n];
+      double sum = 0;
+      for (int i = 0; i < n; i++) {
+        sum += 1.0 / Math.pow(i + 1, skew);
+        cumulative[i] = sum;
+      }
+      for (int i = 0; i < n; i++) {
+        cumulative[i] /= sum;
+      }
+    }
+
+    /**
+     * Draws the next key.
+     *
+     * @return The key
+     */
+    int next() {
+      int index = Arrays.binarySearch(cumulative, random.nextDouble());
+      return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+  }
+
+  /**
+   * Records latencies into logarithmic buckets, each power of two split into eight linear sub-buckets.
+   */
+  static final class Histogram {
+    private static final int SUB_BUCKETS = 8;
+
+    private final long[] buckets = new long[64 * SUB_BUCKETS];
+    long count;
+    long total;
+    long max;
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    void record(long nanos) {
+      buckets[bucket(Math.max(nanos, 0))]++;
+      count++;
+      total += nanos;
+      max = Math.max(max, nanos);
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return The mean in nanoseconds
+     */
+    double mean() {
+      return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Gets the upper bound of the bucket holding given percentile.
+     *
+     * @param fraction The percentile in [0, 1]
+     * @return The latency in nanoseconds
+     */
+    double percentile(double fraction) {
+      long rank = (long) Math.ceil(fraction * count);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= rank && seen > 0) {
+          return Math.min(upperBound(i), max);
+        }
+      }
+      return max;
+    }
+
+    private static int bucket(long nanos) {
+      if (nanos < SUB_BUCKETS) {
+        return (int) nanos;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+      int sub = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+      return (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int exponent = bucket / SUB_BUCKETS + 2;
+      long sub = bucket % SUB_BUCKETS;
+      return ((SUB_BUCKETS + sub + 1) << (exponent - 3)) - 1;
+    }
+  }
+}
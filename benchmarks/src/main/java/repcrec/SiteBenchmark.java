@@ -0,0 +1,99 @@
+package repcrec;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the lock table of Site: acquiring a read or a write lock on a variable that already has lock holders, and
+ * releasing every lock of a transaction from a filled lock table.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Site
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SiteBenchmark {
+  @Param({"1", "16", "256"})
+  int holders;
+
+  private Site site;
+  private BitSet waitsFor;
+  private Transaction releasing;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    site = new Site(1, 20);
+    site.addVariableToSite(2, true);
+    waitsFor = new BitSet();
+    for (int i = 0; i < holders; i++) {
+      site.readLockVariable(i, 2, waitsFor);
+    }
+    releasing = new Transaction(holders, 0, false);
+  }
+
+  /**
+   * Requests a read lock the transaction already holds behind every other holder.
+   */
+  @Benchmark
+  public boolean readLockVariable() {
+    return site.readLockVariable(holders - 1, 2, waitsFor);
+  }
+
+  /**
+   * Requests a write lock behind every other holder, which queues it, and releases it again.
+   */
+  @Benchmark
+  public Site writeLockAndRelease() {
+    site.writeLockVariable(releasing.getTransactionId(), 2, waitsFor);
+    site.releaseLocksFromTable(releasing);
+    return site;
+  }
+
+  /**
+   * Acquires a read lock for a new transaction and releases it again.
+   */
+  @Benchmark
+  public Site readLockAndRelease() {
+    site.readLockVariable(releasing.getTransactionId(), 2, waitsFor);
+    site.releaseLocksFromTable(releasing);
+    return site;
+  }
+
+  /**
+   * Releases the locks of one transaction from a lock table of 20 variables with the given number of holders each.
+   */
+  @State(Scope.Thread)
+  public static class FilledLockTable {
+    @Param({"1", "16", "256"})
+    int holders;
+
+    Site site;
+    Transaction transaction;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+      site = new Site(1, 20);
+      BitSet waitsFor = new BitSet();
+      for (int v = 1; v <= 20; v++) {
+        site.addVariableToSite(v, v % 2 == 0);
+        for (int i = 0; i < holders; i++) {
+          site.readLockVariable(i, v, waitsFor);
+        }
+      }
+      transaction = new Transaction(holders / 2, 0, false);
+    }
+  }
+
+  @Benchmark
+  public Site releaseLocksFromTable(FilledLockTable table) {
+    table.site.releaseLocksFromTable(table.transaction);
+    return table.site;
+  }
+}
@@ -0,0 +1,49 @@
+package repcrec;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks routing a variable to a site with SiteManager.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see SiteManager
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SiteManagerBenchmark {
+  @Param({"0", "5", "9"})
+  int failedSites;
+
+  private SiteManager siteManager;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    siteManager = new SiteManager(EventSink.NONE);
+    for (int siteId = 1; siteId <= failedSites; siteId++) {
+      siteManager.failSite(siteId, 0);
+    }
+  }
+
+  /**
+   * Routes a replicated variable, skipping the failed sites in front of the first available one.
+   */
+  @Benchmark
+  public Site getSiteReplicated() {
+    return siteManager.getSiteOfVariable(2);
+  }
+
+  /**
+   * Routes a non-replicated variable to its only site.
+   */
+  @Benchmark
+  public Site getSiteSingleSite() {
+    return siteManager.getSiteOfVariable(19);
+  }
+}
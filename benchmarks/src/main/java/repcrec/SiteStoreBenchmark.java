@@ -0,0 +1,68 @@
+package repcrec;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the stores of site data on and off the heap: committing a version of a variable with pruning, and
+ * reading a snapshot of a variable, over many variables.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see SiteStore
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class SiteStoreBenchmark {
+  @Param({"heap", "off_heap"})
+  String kind;
+
+  @Param({"1000", "1000000"})
+  int variables;
+
+  private SiteStore store;
+  private int index;
+  private int time;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    store = SiteStore.create(SiteStore.Kind.parse(kind), variables);
+    for (int i = 1; i <= variables; i++) {
+      store.initialize(i, i * 10);
+    }
+    for (int t = 1; t <= 8; t++) {
+      for (int i = 1; i <= variables; i++) {
+        store.setValue(i, t);
+        store.commit(i, t, 0);
+      }
+    }
+    time = 8;
+  }
+
+  /**
+   * Commits a new version of the next variable, keeping the last eight versions.
+   */
+  @Benchmark
+  public int commit() {
+    index = index % variables + 1;
+    if (index == 1) {
+      time++;
+    }
+    store.setValue(index, time);
+    return store.commit(index, time, time - 7);
+  }
+
+  /**
+   * Reads the next variable at a snapshot in the middle of its versions.
+   */
+  @Benchmark
+  public long readVersion() {
+    index = index % variables + 1;
+    return store.readVersion(index, time - 3);
+  }
+}
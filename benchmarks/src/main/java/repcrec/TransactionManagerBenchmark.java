@@ -0,0 +1,90 @@
+package repcrec;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the lock acquisition of write requests and the deadlock check of TransactionManager.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see TransactionManager
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TransactionManagerBenchmark {
+  private TransactionManager tm;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    tm = new TransactionManager(() -> 1, EventSink.NONE);
+    tm.beginTransaction(1, 1, false);
+    tm.checkWrite(1, 2);
+    tm.checkWrite(1, 3);
+  }
+
+  /**
+   * Checks write locks of a replicated variable the transaction already holds at every site.
+   */
+  @Benchmark
+  public boolean checkWriteReplicated() {
+    return tm.checkWrite(1, 2);
+  }
+
+  /**
+   * Checks the write lock of a non-replicated variable the transaction already holds.
+   */
+  @Benchmark
+  public boolean checkWriteSingleSite() {
+    return tm.checkWrite(1, 3);
+  }
+
+  /**
+   * Acquires write locks of a replicated variable at every site on an empty lock table.
+   */
+  @State(Scope.Thread)
+  public static class FreshManager {
+    TransactionManager tm;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+      tm = new TransactionManager(() -> 1, EventSink.NONE);
+      tm.beginTransaction(1, 1, false);
+    }
+  }
+
+  @Benchmark
+  public boolean checkWriteAcquire(FreshManager fresh) {
+    return fresh.tm.checkWrite(1, 2);
+  }
+
+  /**
+   * Checks for a deadlock on a wait for graph of the given number of transactions. Every transaction waits for the
+   * next one, so the whole chain is traversed without finding a cycle.
+   */
+  @State(Scope.Thread)
+  public static class WaitForChain {
+    @Param({"10", "100", "500"})
+    int transactions;
+
+    TransactionManager tm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      tm = new TransactionManager(() -> 1, EventSink.NONE);
+      for (int i = 1; i < transactions; i++) {
+        tm.getWaitsFor(i).set(i + 1);
+      }
+    }
+  }
+
+  @Benchmark
+  public boolean isDeadLock(WaitForChain chain) {
+    return chain.tm.isDeadLock(TransactionManager.CHECK_POINT, 1);
+  }
+}
@@ -0,0 +1,51 @@
+package repcrec;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the multiversion read of Variable for read-only transactions on version histories of growing length.
+ *
+ * @author Hyung Jin Cho
+ * @version 12/07/2018
+ * @see Variable
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class VariableBenchmark {
+  @Param({"10", "1000", "100000"})
+  int versions;
+
+  private Variable variable;
+  private int time;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    variable = new Variable(20);
+    for (int t = 1; t <= versions; t++) {
+      variable.commitValue(t, t);
+    }
+  }
+
+  /**
+   * Reads the version committed before a time in the middle of the history, moving the time on each call.
+   */
+  @Benchmark
+  public long readOnly() {
+    time = time % versions + 1;
+    return variable.readOnly(time);
+  }
+
+  /**
+   * Reads the newest version, as a read-only transaction started after the last commit does.
+   */
+  @Benchmark
+  public long readOnlyLatest() {
+    return variable.readOnly(versions + 1);
+  }
+}